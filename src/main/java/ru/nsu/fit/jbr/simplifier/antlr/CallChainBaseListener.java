@@ -83,6 +83,18 @@ public class CallChainBaseListener implements CallChainListener {
 	 * <p>The default implementation does nothing.</p>
 	 */
 	@Override public void exitFilterCall(CallChainParser.FilterCallContext ctx) { }
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>The default implementation does nothing.</p>
+	 */
+	@Override public void enterLetCall(CallChainParser.LetCallContext ctx) { }
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>The default implementation does nothing.</p>
+	 */
+	@Override public void exitLetCall(CallChainParser.LetCallContext ctx) { }
 	/**
 	 * {@inheritDoc}
 	 *
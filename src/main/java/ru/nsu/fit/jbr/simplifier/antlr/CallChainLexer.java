@@ -16,8 +16,8 @@ public class CallChainLexer extends Lexer {
 	protected static final PredictionContextCache _sharedContextCache =
 		new PredictionContextCache();
 	public static final int
-		T__0=1, T__1=2, T__2=3, T__3=4, T__4=5, T__5=6, T__6=7, NUMBER=8, ELEMENT=9, 
-		OPERATION=10;
+		T__0=1, T__1=2, T__2=3, T__3=4, T__4=5, T__5=6, T__6=7, T__7=8, T__8=9, 
+		NUMBER=10, ELEMENT=11, NAME=12, OPERATION=13;
 	public static String[] channelNames = {
 		"DEFAULT_TOKEN_CHANNEL", "HIDDEN"
 	};
@@ -28,23 +28,23 @@ public class CallChainLexer extends Lexer {
 
 	private static String[] makeRuleNames() {
 		return new String[] {
-			"T__0", "T__1", "T__2", "T__3", "T__4", "T__5", "T__6", "NUMBER", "ELEMENT", 
-			"OPERATION"
+			"T__0", "T__1", "T__2", "T__3", "T__4", "T__5", "T__6", "T__7", "T__8", 
+			"NUMBER", "ELEMENT", "NAME", "OPERATION"
 		};
 	}
 	public static final String[] ruleNames = makeRuleNames();
 
 	private static String[] makeLiteralNames() {
 		return new String[] {
-			null, "'-'", "'('", "')'", "'map{'", "'}'", "'filter{'", "'%>%'", null, 
-			"'element'"
+			null, "'-'", "'('", "')'", "'map{'", "'}'", "'filter{'", "'let{'", "':='", 
+			"'%>%'", null, "'element'"
 		};
 	}
 	private static final String[] _LITERAL_NAMES = makeLiteralNames();
 	private static String[] makeSymbolicNames() {
 		return new String[] {
-			null, null, null, null, null, null, null, null, "NUMBER", "ELEMENT", 
-			"OPERATION"
+			null, null, null, null, null, null, null, null, null, null, "NUMBER", 
+			"ELEMENT", "NAME", "OPERATION"
 		};
 	}
 	private static final String[] _SYMBOLIC_NAMES = makeSymbolicNames();
@@ -106,23 +106,27 @@ public class CallChainLexer extends Lexer {
 	public ATN getATN() { return _ATN; }
 
 	public static final String _serializedATN =
-		"\3\u608b\ua72a\u8133\ub9ed\u417c\u3be7\u7786\u5964\2\f?\b\1\4\2\t\2\4"+
+		"\3\u608b\ua72a\u8133\ub9ed\u417c\u3be7\u7786\u5964\2\17T\b\1\4\2\t\2\4"+
 		"\3\t\3\4\4\t\4\4\5\t\5\4\6\t\6\4\7\t\7\4\b\t\b\4\t\t\t\4\n\t\n\4\13\t"+
-		"\13\3\2\3\2\3\3\3\3\3\4\3\4\3\5\3\5\3\5\3\5\3\5\3\6\3\6\3\7\3\7\3\7\3"+
-		"\7\3\7\3\7\3\7\3\7\3\b\3\b\3\b\3\b\3\t\6\t\62\n\t\r\t\16\t\63\3\n\3\n"+
-		"\3\n\3\n\3\n\3\n\3\n\3\n\3\13\3\13\2\2\f\3\3\5\4\7\5\t\6\13\7\r\b\17\t"+
-		"\21\n\23\13\25\f\3\2\4\3\2\62;\7\2((,-//>@~~\2?\2\3\3\2\2\2\2\5\3\2\2"+
-		"\2\2\7\3\2\2\2\2\t\3\2\2\2\2\13\3\2\2\2\2\r\3\2\2\2\2\17\3\2\2\2\2\21"+
-		"\3\2\2\2\2\23\3\2\2\2\2\25\3\2\2\2\3\27\3\2\2\2\5\31\3\2\2\2\7\33\3\2"+
-		"\2\2\t\35\3\2\2\2\13\"\3\2\2\2\r$\3\2\2\2\17,\3\2\2\2\21\61\3\2\2\2\23"+
-		"\65\3\2\2\2\25=\3\2\2\2\27\30\7/\2\2\30\4\3\2\2\2\31\32\7*\2\2\32\6\3"+
-		"\2\2\2\33\34\7+\2\2\34\b\3\2\2\2\35\36\7o\2\2\36\37\7c\2\2\37 \7r\2\2"+
-		" !\7}\2\2!\n\3\2\2\2\"#\7\177\2\2#\f\3\2\2\2$%\7h\2\2%&\7k\2\2&\'\7n\2"+
-		"\2\'(\7v\2\2()\7g\2\2)*\7t\2\2*+\7}\2\2+\16\3\2\2\2,-\7\'\2\2-.\7@\2\2"+
-		"./\7\'\2\2/\20\3\2\2\2\60\62\t\2\2\2\61\60\3\2\2\2\62\63\3\2\2\2\63\61"+
-		"\3\2\2\2\63\64\3\2\2\2\64\22\3\2\2\2\65\66\7g\2\2\66\67\7n\2\2\678\7g"+
-		"\2\289\7o\2\29:\7g\2\2:;\7p\2\2;<\7v\2\2<\24\3\2\2\2=>\t\3\2\2>\26\3\2"+
-		"\2\2\4\2\63\2";
+		"\13\4\f\t\f\4\r\t\r\4\16\t\16\3\2\3\2\3\3\3\3\3\4\3\4\3\5\3\5\3\5\3\5"+
+		"\3\5\3\6\3\6\3\7\3\7\3\7\3\7\3\7\3\7\3\7\3\7\3\b\3\b\3\b\3\b\3\b\3\t\3"+
+		"\t\3\t\3\n\3\n\3\n\3\n\3\13\6\13@\n\13\r\13\16\13A\3\f\3\f\3\f\3\f\3\f"+
+		"\3\f\3\f\3\f\3\r\3\r\7\rN\n\r\f\r\16\rQ\13\r\3\16\3\16\2\2\17\3\3\5\4"+
+		"\7\5\t\6\13\7\r\b\17\t\21\n\23\13\25\f\27\r\31\16\33\17\3\2\6\3\2\62;"+
+		"\4\2aac|\5\2\62;aac|\7\2((,-//>@~~\2U\2\3\3\2\2\2\2\5\3\2\2\2\2\7\3\2"+
+		"\2\2\2\t\3\2\2\2\2\13\3\2\2\2\2\r\3\2\2\2\2\17\3\2\2\2\2\21\3\2\2\2\2"+
+		"\23\3\2\2\2\2\25\3\2\2\2\2\27\3\2\2\2\2\31\3\2\2\2\2\33\3\2\2\2\3\35\3"+
+		"\2\2\2\5\37\3\2\2\2\7!\3\2\2\2\t#\3\2\2\2\13(\3\2\2\2\r*\3\2\2\2\17\62"+
+		"\3\2\2\2\21\67\3\2\2\2\23:\3\2\2\2\25?\3\2\2\2\27C\3\2\2\2\31K\3\2\2\2"+
+		"\33R\3\2\2\2\35\36\7/\2\2\36\4\3\2\2\2\37 \7*\2\2 \6\3\2\2\2!\"\7+\2\2"+
+		"\"\b\3\2\2\2#$\7o\2\2$%\7c\2\2%&\7r\2\2&\'\7}\2\2\'\n\3\2\2\2()\7\177"+
+		"\2\2)\f\3\2\2\2*+\7h\2\2+,\7k\2\2,-\7n\2\2-.\7v\2\2./\7g\2\2/\60\7t\2"+
+		"\2\60\61\7}\2\2\61\16\3\2\2\2\62\63\7n\2\2\63\64\7g\2\2\64\65\7v\2\2\65"+
+		"\66\7}\2\2\66\20\3\2\2\2\678\7<\2\289\7?\2\29\22\3\2\2\2:;\7\'\2\2;<\7"+
+		"@\2\2<=\7\'\2\2=\24\3\2\2\2>@\t\2\2\2?>\3\2\2\2@A\3\2\2\2A?\3\2\2\2AB"+
+		"\3\2\2\2B\26\3\2\2\2CD\7g\2\2DE\7n\2\2EF\7g\2\2FG\7o\2\2GH\7g\2\2HI\7"+
+		"p\2\2IJ\7v\2\2J\30\3\2\2\2KO\t\3\2\2LN\t\4\2\2ML\3\2\2\2NQ\3\2\2\2OM\3"+
+		"\2\2\2OP\3\2\2\2P\32\3\2\2\2QO\3\2\2\2RS\t\5\2\2S\34\3\2\2\2\5\2AO\2";
 	public static final ATN _ATN =
 		new ATNDeserializer().deserialize(_serializedATN.toCharArray());
 	static {
@@ -67,6 +67,16 @@ public interface CallChainListener extends ParseTreeListener {
 	 * @param ctx the parse tree
 	 */
 	void exitFilterCall(CallChainParser.FilterCallContext ctx);
+	/**
+	 * Enter a parse tree produced by {@link CallChainParser#letCall}.
+	 * @param ctx the parse tree
+	 */
+	void enterLetCall(CallChainParser.LetCallContext ctx);
+	/**
+	 * Exit a parse tree produced by {@link CallChainParser#letCall}.
+	 * @param ctx the parse tree
+	 */
+	void exitLetCall(CallChainParser.LetCallContext ctx);
 	/**
 	 * Enter a parse tree produced by {@link CallChainParser#call}.
 	 * @param ctx the parse tree
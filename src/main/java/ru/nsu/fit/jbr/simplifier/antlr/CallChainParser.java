@@ -21,30 +21,31 @@ public class CallChainParser extends Parser {
 	protected static final PredictionContextCache _sharedContextCache =
 		new PredictionContextCache();
 	public static final int
-		T__0=1, T__1=2, T__2=3, T__3=4, T__4=5, T__5=6, T__6=7, NUMBER=8, ELEMENT=9, 
-		OPERATION=10;
+		T__0=1, T__1=2, T__2=3, T__3=4, T__4=5, T__5=6, T__6=7, T__7=8, T__8=9, 
+		NUMBER=10, ELEMENT=11, NAME=12, OPERATION=13;
 	public static final int
 		RULE_minusExpr = 0, RULE_constExpr = 1, RULE_binExpr = 2, RULE_expr = 3, 
-		RULE_mapCall = 4, RULE_filterCall = 5, RULE_call = 6, RULE_callChain = 7;
+		RULE_mapCall = 4, RULE_filterCall = 5, RULE_letCall = 6, RULE_call = 7, 
+		RULE_callChain = 8;
 	private static String[] makeRuleNames() {
 		return new String[] {
 			"minusExpr", "constExpr", "binExpr", "expr", "mapCall", "filterCall", 
-			"call", "callChain"
+			"letCall", "call", "callChain"
 		};
 	}
 	public static final String[] ruleNames = makeRuleNames();
 
 	private static String[] makeLiteralNames() {
 		return new String[] {
-			null, "'-'", "'('", "')'", "'map{'", "'}'", "'filter{'", "'%>%'", null, 
-			"'element'"
+			null, "'-'", "'('", "')'", "'map{'", "'}'", "'filter{'", "'let{'", "':='", 
+			"'%>%'", null, "'element'"
 		};
 	}
 	private static final String[] _LITERAL_NAMES = makeLiteralNames();
 	private static String[] makeSymbolicNames() {
 		return new String[] {
-			null, null, null, null, null, null, null, null, "NUMBER", "ELEMENT", 
-			"OPERATION"
+			null, null, null, null, null, null, null, null, null, null, "NUMBER", 
+			"ELEMENT", "NAME", "OPERATION"
 		};
 	}
 	private static final String[] _SYMBOLIC_NAMES = makeSymbolicNames();
@@ -125,9 +126,9 @@ public class CallChainParser extends Parser {
 		try {
 			enterOuterAlt(_localctx, 1);
 			{
-			setState(16);
+			setState(18);
 			match(T__0);
-			setState(17);
+			setState(19);
 			match(NUMBER);
 			}
 		}
@@ -170,20 +171,20 @@ public class CallChainParser extends Parser {
 		ConstExprContext _localctx = new ConstExprContext(_ctx, getState());
 		enterRule(_localctx, 2, RULE_constExpr);
 		try {
-			setState(21);
+			setState(23);
 			_errHandler.sync(this);
 			switch (_input.LA(1)) {
 			case NUMBER:
 				enterOuterAlt(_localctx, 1);
 				{
-				setState(19);
+				setState(21);
 				match(NUMBER);
 				}
 				break;
 			case T__0:
 				enterOuterAlt(_localctx, 2);
 				{
-				setState(20);
+				setState(22);
 				minusExpr();
 				}
 				break;
@@ -203,6 +204,7 @@ public class CallChainParser extends Parser {
 	}
 
 	public static class BinExprContext extends ParserRuleContext {
+		public Token op;
 		public List<ExprContext> expr() {
 			return getRuleContexts(ExprContext.class);
 		}
@@ -232,18 +234,28 @@ public class CallChainParser extends Parser {
 	public final BinExprContext binExpr() throws RecognitionException {
 		BinExprContext _localctx = new BinExprContext(_ctx, getState());
 		enterRule(_localctx, 4, RULE_binExpr);
+		int _la;
 		try {
 			enterOuterAlt(_localctx, 1);
 			{
-			setState(23);
-			match(T__1);
-			setState(24);
-			expr();
 			setState(25);
-			match(OPERATION);
+			match(T__1);
 			setState(26);
 			expr();
 			setState(27);
+			((BinExprContext)_localctx).op = _input.LT(1);
+			_la = _input.LA(1);
+			if ( !(_la==T__0 || _la==OPERATION) ) {
+				((BinExprContext)_localctx).op = (Token)_errHandler.recoverInline(this);
+			}
+			else {
+				if ( _input.LA(1)==Token.EOF ) matchedEOF = true;
+				_errHandler.reportMatch(this);
+				consume();
+			}
+			setState(28);
+			expr();
+			setState(29);
 			match(T__2);
 			}
 		}
@@ -260,6 +272,7 @@ public class CallChainParser extends Parser {
 
 	public static class ExprContext extends ParserRuleContext {
 		public TerminalNode ELEMENT() { return getToken(CallChainParser.ELEMENT, 0); }
+		public TerminalNode NAME() { return getToken(CallChainParser.NAME, 0); }
 		public ConstExprContext constExpr() {
 			return getRuleContext(ConstExprContext.class,0);
 		}
@@ -289,28 +302,35 @@ public class CallChainParser extends Parser {
 		ExprContext _localctx = new ExprContext(_ctx, getState());
 		enterRule(_localctx, 6, RULE_expr);
 		try {
-			setState(32);
+			setState(35);
 			_errHandler.sync(this);
 			switch (_input.LA(1)) {
 			case ELEMENT:
 				enterOuterAlt(_localctx, 1);
 				{
-				setState(29);
+				setState(31);
 				match(ELEMENT);
 				}
 				break;
+			case NAME:
+				enterOuterAlt(_localctx, 2);
+				{
+				setState(32);
+				match(NAME);
+				}
+				break;
 			case T__0:
 			case NUMBER:
-				enterOuterAlt(_localctx, 2);
+				enterOuterAlt(_localctx, 3);
 				{
-				setState(30);
+				setState(33);
 				constExpr();
 				}
 				break;
 			case T__1:
-				enterOuterAlt(_localctx, 3);
+				enterOuterAlt(_localctx, 4);
 				{
-				setState(31);
+				setState(34);
 				binExpr();
 				}
 				break;
@@ -358,11 +378,11 @@ public class CallChainParser extends Parser {
 		try {
 			enterOuterAlt(_localctx, 1);
 			{
-			setState(34);
+			setState(37);
 			match(T__3);
-			setState(35);
+			setState(38);
 			expr();
-			setState(36);
+			setState(39);
 			match(T__4);
 			}
 		}
@@ -406,11 +426,64 @@ public class CallChainParser extends Parser {
 		try {
 			enterOuterAlt(_localctx, 1);
 			{
-			setState(38);
+			setState(41);
 			match(T__5);
-			setState(39);
+			setState(42);
 			expr();
-			setState(40);
+			setState(43);
+			match(T__4);
+			}
+		}
+		catch (RecognitionException re) {
+			_localctx.exception = re;
+			_errHandler.reportError(this, re);
+			_errHandler.recover(this, re);
+		}
+		finally {
+			exitRule();
+		}
+		return _localctx;
+	}
+
+	public static class LetCallContext extends ParserRuleContext {
+		public TerminalNode NAME() { return getToken(CallChainParser.NAME, 0); }
+		public ExprContext expr() {
+			return getRuleContext(ExprContext.class,0);
+		}
+		public LetCallContext(ParserRuleContext parent, int invokingState) {
+			super(parent, invokingState);
+		}
+		@Override public int getRuleIndex() { return RULE_letCall; }
+		@Override
+		public void enterRule(ParseTreeListener listener) {
+			if ( listener instanceof CallChainListener ) ((CallChainListener)listener).enterLetCall(this);
+		}
+		@Override
+		public void exitRule(ParseTreeListener listener) {
+			if ( listener instanceof CallChainListener ) ((CallChainListener)listener).exitLetCall(this);
+		}
+		@Override
+		public <T> T accept(ParseTreeVisitor<? extends T> visitor) {
+			if ( visitor instanceof CallChainVisitor ) return ((CallChainVisitor<? extends T>)visitor).visitLetCall(this);
+			else return visitor.visitChildren(this);
+		}
+	}
+
+	public final LetCallContext letCall() throws RecognitionException {
+		LetCallContext _localctx = new LetCallContext(_ctx, getState());
+		enterRule(_localctx, 12, RULE_letCall);
+		try {
+			enterOuterAlt(_localctx, 1);
+			{
+			setState(45);
+			match(T__6);
+			setState(46);
+			match(NAME);
+			setState(47);
+			match(T__7);
+			setState(48);
+			expr();
+			setState(49);
 			match(T__4);
 			}
 		}
@@ -432,6 +505,9 @@ public class CallChainParser extends Parser {
 		public FilterCallContext filterCall() {
 			return getRuleContext(FilterCallContext.class,0);
 		}
+		public LetCallContext letCall() {
+			return getRuleContext(LetCallContext.class,0);
+		}
 		public CallContext(ParserRuleContext parent, int invokingState) {
 			super(parent, invokingState);
 		}
@@ -453,25 +529,32 @@ public class CallChainParser extends Parser {
 
 	public final CallContext call() throws RecognitionException {
 		CallContext _localctx = new CallContext(_ctx, getState());
-		enterRule(_localctx, 12, RULE_call);
+		enterRule(_localctx, 14, RULE_call);
 		try {
-			setState(44);
+			setState(54);
 			_errHandler.sync(this);
 			switch (_input.LA(1)) {
 			case T__3:
 				enterOuterAlt(_localctx, 1);
 				{
-				setState(42);
+				setState(51);
 				mapCall();
 				}
 				break;
 			case T__5:
 				enterOuterAlt(_localctx, 2);
 				{
-				setState(43);
+				setState(52);
 				filterCall();
 				}
 				break;
+			case T__6:
+				enterOuterAlt(_localctx, 3);
+				{
+				setState(53);
+				letCall();
+				}
+				break;
 			default:
 				throw new NoViableAltException(this);
 			}
@@ -494,6 +577,7 @@ public class CallChainParser extends Parser {
 		public CallContext call(int i) {
 			return getRuleContext(CallContext.class,i);
 		}
+		public TerminalNode EOF() { return getToken(CallChainParser.EOF, 0); }
 		public CallChainContext(ParserRuleContext parent, int invokingState) {
 			super(parent, invokingState);
 		}
@@ -515,29 +599,31 @@ public class CallChainParser extends Parser {
 
 	public final CallChainContext callChain() throws RecognitionException {
 		CallChainContext _localctx = new CallChainContext(_ctx, getState());
-		enterRule(_localctx, 14, RULE_callChain);
+		enterRule(_localctx, 16, RULE_callChain);
 		int _la;
 		try {
 			enterOuterAlt(_localctx, 1);
 			{
-			setState(46);
+			setState(56);
 			call();
-			setState(51);
+			setState(61);
 			_errHandler.sync(this);
 			_la = _input.LA(1);
-			while (_la==T__6) {
+			while (_la==T__8) {
 				{
 				{
-				setState(47);
-				match(T__6);
-				setState(48);
+				setState(57);
+				match(T__8);
+				setState(58);
 				call();
 				}
 				}
-				setState(53);
+				setState(63);
 				_errHandler.sync(this);
 				_la = _input.LA(1);
 			}
+			setState(64);
+			match(EOF);
 			}
 		}
 		catch (RecognitionException re) {
@@ -552,20 +638,23 @@ public class CallChainParser extends Parser {
 	}
 
 	public static final String _serializedATN =
-		"\3\u608b\ua72a\u8133\ub9ed\u417c\u3be7\u7786\u5964\3\f9\4\2\t\2\4\3\t"+
-		"\3\4\4\t\4\4\5\t\5\4\6\t\6\4\7\t\7\4\b\t\b\4\t\t\t\3\2\3\2\3\2\3\3\3\3"+
-		"\5\3\30\n\3\3\4\3\4\3\4\3\4\3\4\3\4\3\5\3\5\3\5\5\5#\n\5\3\6\3\6\3\6\3"+
-		"\6\3\7\3\7\3\7\3\7\3\b\3\b\5\b/\n\b\3\t\3\t\3\t\7\t\64\n\t\f\t\16\t\67"+
-		"\13\t\3\t\2\2\n\2\4\6\b\n\f\16\20\2\2\2\65\2\22\3\2\2\2\4\27\3\2\2\2\6"+
-		"\31\3\2\2\2\b\"\3\2\2\2\n$\3\2\2\2\f(\3\2\2\2\16.\3\2\2\2\20\60\3\2\2"+
-		"\2\22\23\7\3\2\2\23\24\7\n\2\2\24\3\3\2\2\2\25\30\7\n\2\2\26\30\5\2\2"+
-		"\2\27\25\3\2\2\2\27\26\3\2\2\2\30\5\3\2\2\2\31\32\7\4\2\2\32\33\5\b\5"+
-		"\2\33\34\7\f\2\2\34\35\5\b\5\2\35\36\7\5\2\2\36\7\3\2\2\2\37#\7\13\2\2"+
-		" #\5\4\3\2!#\5\6\4\2\"\37\3\2\2\2\" \3\2\2\2\"!\3\2\2\2#\t\3\2\2\2$%\7"+
-		"\6\2\2%&\5\b\5\2&\'\7\7\2\2\'\13\3\2\2\2()\7\b\2\2)*\5\b\5\2*+\7\7\2\2"+
-		"+\r\3\2\2\2,/\5\n\6\2-/\5\f\7\2.,\3\2\2\2.-\3\2\2\2/\17\3\2\2\2\60\65"+
-		"\5\16\b\2\61\62\7\t\2\2\62\64\5\16\b\2\63\61\3\2\2\2\64\67\3\2\2\2\65"+
-		"\63\3\2\2\2\65\66\3\2\2\2\66\21\3\2\2\2\67\65\3\2\2\2\6\27\".\65";
+		"\3\u608b\ua72a\u8133\ub9ed\u417c\u3be7\u7786\u5964\3\17E\4\2\t\2\4\3\t"+
+		"\3\4\4\t\4\4\5\t\5\4\6\t\6\4\7\t\7\4\b\t\b\4\t\t\t\4\n\t\n\3\2\3\2\3\2"+
+		"\3\3\3\3\5\3\32\n\3\3\4\3\4\3\4\3\4\3\4\3\4\3\5\3\5\3\5\3\5\5\5&\n\5\3"+
+		"\6\3\6\3\6\3\6\3\7\3\7\3\7\3\7\3\b\3\b\3\b\3\b\3\b\3\b\3\t\3\t\3\t\5\t"+
+		"9\n\t\3\n\3\n\3\n\7\n>\n\n\f\n\16\nA\13\n\3\n\3\n\3\n\2\2\13\2\4\6\b\n"+
+		"\f\16\20\22\2\3\4\2\3\3\17\17\2B\2\24\3\2\2\2\4\31\3\2\2\2\6\33\3\2\2"+
+		"\2\b%\3\2\2\2\n\'\3\2\2\2\f+\3\2\2\2\16/\3\2\2\2\208\3\2\2\2\22:\3\2\2"+
+		"\2\24\25\7\3\2\2\25\26\7\f\2\2\26\3\3\2\2\2\27\32\7\f\2\2\30\32\5\2\2"+
+		"\2\31\27\3\2\2\2\31\30\3\2\2\2\32\5\3\2\2\2\33\34\7\4\2\2\34\35\5\b\5"+
+		"\2\35\36\t\2\2\2\36\37\5\b\5\2\37 \7\5\2\2 \7\3\2\2\2!&\7\r\2\2\"&\7\16"+
+		"\2\2#&\5\4\3\2$&\5\6\4\2%!\3\2\2\2%\"\3\2\2\2%#\3\2\2\2%$\3\2\2\2&\t\3"+
+		"\2\2\2\'(\7\6\2\2()\5\b\5\2)*\7\7\2\2*\13\3\2\2\2+,\7\b\2\2,-\5\b\5\2"+
+		"-.\7\7\2\2.\r\3\2\2\2/\60\7\t\2\2\60\61\7\16\2\2\61\62\7\n\2\2\62\63\5"+
+		"\b\5\2\63\64\7\7\2\2\64\17\3\2\2\2\659\5\n\6\2\669\5\f\7\2\679\5\16\b"+
+		"\28\65\3\2\2\28\66\3\2\2\28\67\3\2\2\29\21\3\2\2\2:?\5\20\t\2;<\7\13\2"+
+		"\2<>\5\20\t\2=;\3\2\2\2>A\3\2\2\2?=\3\2\2\2?@\3\2\2\2@B\3\2\2\2A?\3\2"+
+		"\2\2BC\7\2\2\3C\23\3\2\2\2\6\31%8?";
 	public static final ATN _ATN =
 		new ATNDeserializer().deserialize(_serializedATN.toCharArray());
 	static {
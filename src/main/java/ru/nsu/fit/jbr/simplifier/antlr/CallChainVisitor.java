@@ -46,6 +46,12 @@ public interface CallChainVisitor<T> extends ParseTreeVisitor<T> {
 	 * @return the visitor result
 	 */
 	T visitFilterCall(CallChainParser.FilterCallContext ctx);
+	/**
+	 * Visit a parse tree produced by {@link CallChainParser#letCall}.
+	 * @param ctx the parse tree
+	 * @return the visitor result
+	 */
+	T visitLetCall(CallChainParser.LetCallContext ctx);
 	/**
 	 * Visit a parse tree produced by {@link CallChainParser#call}.
 	 * @param ctx the parse tree
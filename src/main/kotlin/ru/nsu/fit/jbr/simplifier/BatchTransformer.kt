@@ -0,0 +1,72 @@
+package ru.nsu.fit.jbr.simplifier
+
+import java.io.BufferedReader
+import java.io.Writer
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * Transforms chains given one per line on worker pool and writes results in input order.
+ * Every worker thread reuses its own [ChainTransformer].
+ * Lines failing with other errors than syntax and type ones (e.g. too deep nesting) get [INTERNAL_ERROR].
+ */
+class BatchTransformer(
+    private val threads: Int = Runtime.getRuntime().availableProcessors(),
+    private val optimizationDisabled: Boolean = true,
+    /**
+     * Cache of results shared by workers, repeated lines are transformed once if it is given.
+     */
+    private val cache: TransformCache? = null
+) {
+
+    companion object {
+        const val INTERNAL_ERROR = "INTERNAL ERROR"
+    }
+
+    /**
+     * Count of lines transformed ahead of first not written result per worker thread.
+     */
+    private val linesPerThread = 64
+
+    init {
+        require(threads > 0) { "Count of threads should be positive" }
+    }
+
+    fun transform(reader: BufferedReader, writer: Writer) {
+        val executor = Executors.newFixedThreadPool(threads) { task ->
+            Thread(task, "chain-transformer").apply { isDaemon = true }
+        }
+        val transformers = ThreadLocal.withInitial { ChainTransformer() }
+        val pending = ArrayDeque<Future<String>>()
+        try {
+            while (true) {
+                val line = reader.readLine() ?: break
+                pending.add(executor.submit(Callable { transform(line, transformers.get()) }))
+                if (pending.size >= threads * linesPerThread) {
+                    writer.write(result(pending.poll()))
+                    writer.write("\n")
+                }
+            }
+            while (pending.isNotEmpty()) {
+                writer.write(result(pending.poll()))
+                writer.write("\n")
+            }
+            writer.flush()
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    private fun result(future: Future<String>): String = try {
+        future.get()
+    } catch (ex: ExecutionException) {
+        INTERNAL_ERROR
+    }
+
+    private fun transform(source: String, transformer: ChainTransformer): String =
+        cache?.transformOrError(source, optimizationDisabled, transformer)
+            ?: transformer.transformOrError(source, optimizationDisabled)
+}
@@ -0,0 +1,91 @@
+package ru.nsu.fit.jbr.simplifier
+
+import org.antlr.v4.runtime.misc.ParseCancellationException
+import ru.nsu.fit.jbr.simplifier.antlrinterop.AntlrParsers
+import ru.nsu.fit.jbr.simplifier.ast.CallChain
+import ru.nsu.fit.jbr.simplifier.ast.IncorrectTypeCancellationException
+import ru.nsu.fit.jbr.simplifier.generation.ChainCodeVisitor
+import ru.nsu.fit.jbr.simplifier.parsing.ChainParser
+import ru.nsu.fit.jbr.simplifier.parsing.StreamingChainParser
+import ru.nsu.fit.jbr.simplifier.transformation.ChainOptimizer
+import ru.nsu.fit.jbr.simplifier.transformation.CommonSubexpressionEliminator
+import ru.nsu.fit.jbr.simplifier.transformation.FixpointOptimizer
+import ru.nsu.fit.jbr.simplifier.transformation.FusionPlanner
+import java.io.Reader
+
+/**
+ * Parses and transforms call chains, reusing parsers and visitors between chains.
+ * Not thread-safe, every thread should have its own transformer.
+ */
+class ChainTransformer(
+    /**
+     * Optimizer used when optimization is enabled.
+     */
+    private val optimizer: ChainOptimizer = FixpointOptimizer()
+) {
+
+    private val parser = ChainParser()
+
+    private val streamingParser = StreamingChainParser()
+
+    private val chainCodeVisitor = ChainCodeVisitor()
+
+    /**
+     * Plan chosen by last [transformPartially] call.
+     */
+    var lastPlan: FusionPlanner.Plan? = null
+        private set
+
+    fun parse(source: String): CallChain = parser.parse(source)
+
+    /**
+     * Parses chain with ANTLR4 parser, which is slower, but generated from grammar.
+     */
+    fun parseWithAntlr(source: String): CallChain = AntlrParsers.parse(source)
+
+    fun transform(source: String, optimizationDisabled: Boolean): String =
+        generate(simplifyCallChain(parse(source)), optimizationDisabled)
+
+    /**
+     * Transforms chain read from reader, calls are fused as they are read.
+     */
+    fun transform(reader: Reader, optimizationDisabled: Boolean): String =
+        generate(streamingParser.fuse(reader), optimizationDisabled)
+
+    /**
+     * Transforms chain keeping several filter and map calls, if planner estimates it cheaper than full fusion.
+     */
+    fun transformPartially(source: String, optimizationDisabled: Boolean, planner: FusionPlanner = FusionPlanner()): String {
+        val plan = planner.plan(parse(source))
+        lastPlan = plan
+        return generate(plan.chain, optimizationDisabled)
+    }
+
+    /**
+     * Optimizes fused chain, binds its shared subexpressions and generates its code.
+     */
+    fun generate(transformed: CallChain, optimizationDisabled: Boolean): String {
+        val optimized = if (optimizationDisabled) {
+            transformed
+        } else {
+            optimizer.optimize(transformed)
+        }
+
+        val eliminated = CommonSubexpressionEliminator().eliminate(optimized)
+
+        chainCodeVisitor.stringBuilder.setLength(0)
+        chainCodeVisitor.visit(eliminated)
+        return chainCodeVisitor.stringBuilder.toString()
+    }
+
+    /**
+     * Transforms chain, returning SYNTAX ERROR or TYPE ERROR for incorrect chains.
+     */
+    fun transformOrError(source: String, optimizationDisabled: Boolean): String = try {
+        transform(source, optimizationDisabled)
+    } catch (ex: ParseCancellationException) {
+        "SYNTAX ERROR"
+    } catch (ex: IncorrectTypeCancellationException) {
+        "TYPE ERROR"
+    }
+}
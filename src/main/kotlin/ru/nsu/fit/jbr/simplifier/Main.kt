@@ -1,17 +1,16 @@
 package ru.nsu.fit.jbr.simplifier
 
-import org.antlr.v4.runtime.CharStreams
-import org.antlr.v4.runtime.CommonTokenStream
 import org.antlr.v4.runtime.misc.ParseCancellationException
-import ru.nsu.fit.jbr.simplifier.antlr.CallChainLexer
-import ru.nsu.fit.jbr.simplifier.antlr.CallChainParser
-import ru.nsu.fit.jbr.simplifier.antlrinterop.AstCreator
-import ru.nsu.fit.jbr.simplifier.antlrinterop.ThrowingErrorListener
 import ru.nsu.fit.jbr.simplifier.ast.*
-import ru.nsu.fit.jbr.simplifier.generation.ChainCodeVisitor
+import ru.nsu.fit.jbr.simplifier.execution.BatchEvaluators
+import ru.nsu.fit.jbr.simplifier.execution.MappedFileEvaluator
 import ru.nsu.fit.jbr.simplifier.transformation.CallOptimizer
-import ru.nsu.fit.jbr.simplifier.transformation.FilterCreator
-import ru.nsu.fit.jbr.simplifier.transformation.MapCreator
+import ru.nsu.fit.jbr.simplifier.transformation.ChainFuser
+import ru.nsu.fit.jbr.simplifier.transformation.EGraphOptimizer
+import ru.nsu.fit.jbr.simplifier.transformation.FixpointOptimizer
+import java.io.File
+import java.nio.file.Path
+import java.nio.file.Paths
 
 fun main(args: Array<String>) {
     if (args.isEmpty()) {
@@ -19,67 +18,124 @@ fun main(args: Array<String>) {
         return
     }
 
-    val result = try {
-        transform(args[0], true)
-    } catch (ex: ParseCancellationException) {
-        println("SYNTAX ERROR")
+    if (args[0] == "--batch") {
+        val reader = if (args.size > 1) File(args[1]).bufferedReader() else System.`in`.bufferedReader()
+        reader.use {
+            BatchTransformer(cache = TransformCache()).transform(it, System.out.bufferedWriter())
+        }
         return
-    } catch (ex: IncorrectTypeCancellationException) {
-        println("TYPE ERROR")
+    }
+
+    if (args[0] == "--evaluate") {
+        if (args.size < 4) {
+            println("USAGE: --evaluate <chain> <input file> <output file>")
+            return
+        }
+        evaluateFile(args[1], Paths.get(args[2]), Paths.get(args[3]))
         return
     }
 
-    println(result)
-}
+    if (args[0] == "--optimize") {
+        val optimizer = when (if (args.size > 2) args[1] else null) {
+            "greedy" -> FixpointOptimizer()
+            "egraph" -> EGraphOptimizer()
+            else -> {
+                println("USAGE: --optimize <greedy|egraph> <chain>")
+                return
+            }
+        }
+        println(ChainTransformer(optimizer).transformOrError(args[2], false))
+        return
+    }
 
-fun transform(source: String, optimizationDisabled: Boolean): String {
-    val ast = getAst(source)
+    if (args[0] == "--server") {
+        if (args.size < 2) {
+            println("USAGE: --server <unix:path|port> [threads]")
+            return
+        }
+        val threads = if (args.size > 2) args[2].toInt() else Runtime.getRuntime().availableProcessors()
+        TransformServer(args[1], threads).use { it.serve() }
+        return
+    }
 
-    val transformed = simplifyCallChain(ast)
+    if (args[0] == "--client") {
+        val optimize = args.size > 3 && args[2] == "--optimize"
+        val source = if (optimize) args[3] else args.getOrNull(2)
+        if (source == null) {
+            println("USAGE: --client <unix:path|port> [--optimize] <chain>")
+            return
+        }
+        TransformClient(args[1]).use { println(it.transformOrError(source, !optimize)) }
+        return
+    }
+
+    if (args[0] == "--file") {
+        if (args.size < 2) {
+            println("USAGE: --file <chain file>")
+            return
+        }
+        try {
+            val result = File(args[1]).bufferedReader().use { ChainTransformer().transform(it, true) }
+            println(result)
+        } catch (ex: ParseCancellationException) {
+            println("SYNTAX ERROR")
+        } catch (ex: IncorrectTypeCancellationException) {
+            println("TYPE ERROR")
+        }
+        return
+    }
 
-    val optimized = if (optimizationDisabled) {
-        transformed
-    } else {
-        CallOptimizer().visit(transformed)
+    if (args[0] == "--partial") {
+        if (args.size < 2) {
+            println("USAGE: --partial <chain>")
+            return
+        }
+        val transformer = ChainTransformer()
+        try {
+            println(transformer.transformPartially(args[1], false))
+            println(transformer.lastPlan)
+        } catch (ex: ParseCancellationException) {
+            println("SYNTAX ERROR")
+        } catch (ex: IncorrectTypeCancellationException) {
+            println("TYPE ERROR")
+        }
+        return
     }
 
-    val chainCodeVisitor = ChainCodeVisitor()
-    chainCodeVisitor.visit(optimized)
-    return chainCodeVisitor.stringBuilder.toString()
+    println(ChainTransformer().transformOrError(args[0], true))
 }
 
-fun getAst(source: String): CallChain {
-    val lexer = CallChainLexer(CharStreams.fromString(source))
-    lexer.removeErrorListeners()
-    lexer.addErrorListener(ThrowingErrorListener.INSTANCE)
-    val tokens = CommonTokenStream(lexer)
+/**
+ * Writes elements of input file passed through chain to output file and prints their count.
+ * Files contain little-endian 32-bit elements.
+ */
+fun evaluateFile(source: String, input: Path, output: Path) {
+    val chain = try {
+        getAst(source)
+    } catch (ex: ParseCancellationException) {
+        println("SYNTAX ERROR")
+        return
+    } catch (ex: IncorrectTypeCancellationException) {
+        println("TYPE ERROR")
+        return
+    }
+    println(MappedFileEvaluator(BatchEvaluators.createParallel(chain)).evaluate(input, output))
+}
 
-    val parser = CallChainParser(tokens)
-    parser.removeErrorListeners()
-    parser.addErrorListener(ThrowingErrorListener.INSTANCE)
-    val callChain = parser.callChain()
+fun transform(source: String, optimizationDisabled: Boolean): String =
+    ChainTransformer().transform(source, optimizationDisabled)
 
-    return AstCreator().visitCallChain(callChain)
-}
+fun getAst(source: String): CallChain = ChainTransformer().parse(source)
 
-fun simplifyCallChain(ast: CallChain): CallChain {
-    val mapCreator = MapCreator()
-    mapCreator.visit(ast.copy())
+fun getAstWithAntlr(source: String): CallChain = ChainTransformer().parseWithAntlr(source)
 
-    val filterCreator = FilterCreator()
-    filterCreator.visit(ast.copy())
+fun simplifyCallChain(ast: CallChain): CallChain {
+    val fuser = ChainFuser()
+    fuser.visit(ast)
 
-    val map = if (mapCreator.map == null) {
-        MapCall(Element)
-    } else {
-        mapCreator.map!!
-    }
+    val map = fuser.map ?: MapCall(Element)
 
-    val filter = if (filterCreator.filter == null) {
-        FilterCall(CallOptimizer.trueCmp())
-    } else {
-        filterCreator.filter!!
-    }
+    val filter = fuser.filter ?: FilterCall(CallOptimizer.trueCmp())
 
     return CallChain(mutableListOf(filter, map))
 }
\ No newline at end of file
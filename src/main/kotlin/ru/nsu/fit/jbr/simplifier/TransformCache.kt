@@ -0,0 +1,217 @@
+package ru.nsu.fit.jbr.simplifier
+
+import org.antlr.v4.runtime.misc.ParseCancellationException
+import ru.nsu.fit.jbr.simplifier.ast.IncorrectTypeCancellationException
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Bounded cache of transformation results, including syntax and type errors.
+ * Entries are kept in LRU order, and new entry replaces the least recently used one
+ * only if its source was requested more often (TinyLFU admission), so rare sources can't flush frequent ones.
+ * Frequencies are estimated by count-min sketch, which is halved periodically to forget old requests.
+ * Sources are used as keys as is: grammar has no whitespace, so sources differing in whitespace
+ * have different results. Thread-safe, transformations are performed outside of lock.
+ */
+class TransformCache(
+    private val maxEntries: Int = 10_000,
+    /**
+     * Limit of estimated size of keys and results in bytes.
+     */
+    private val maxBytes: Long = 64L shl 20
+) {
+
+    private enum class Outcome {
+        SUCCESS, SYNTAX_ERROR, TYPE_ERROR
+    }
+
+    private data class Key(val source: String, val optimizationDisabled: Boolean)
+
+    private class Entry(val outcome: Outcome, val text: String, val bytes: Long)
+
+    private val lock = ReentrantLock()
+
+    /**
+     * Entries in access order, eldest first.
+     */
+    private val entries = LinkedHashMap<Key, Entry>(16, 0.75f, true)
+
+    private var bytes = 0L
+
+    private val sketch = FrequencySketch(maxEntries)
+
+    private val hitCounter = AtomicLong()
+
+    private val missCounter = AtomicLong()
+
+    private val evictionCounter = AtomicLong()
+
+    private val rejectionCounter = AtomicLong()
+
+    init {
+        require(maxEntries > 0 && maxBytes > 0) { "Cache limits should be positive" }
+    }
+
+    val hits: Long
+        get() = hitCounter.get()
+
+    val misses: Long
+        get() = missCounter.get()
+
+    /**
+     * Count of entries removed to admit more frequent ones.
+     */
+    val evictions: Long
+        get() = evictionCounter.get()
+
+    /**
+     * Count of results not cached because their sources are less frequent than cached ones.
+     */
+    val rejections: Long
+        get() = rejectionCounter.get()
+
+    val size: Int
+        get() = lock.withLock { entries.size }
+
+    val estimatedBytes: Long
+        get() = lock.withLock { bytes }
+
+    /**
+     * Returns result of [ChainTransformer.transform], throwing the same exceptions.
+     */
+    fun transform(source: String, optimizationDisabled: Boolean, transformer: ChainTransformer): String {
+        val entry = get(source, optimizationDisabled, transformer)
+        return when (entry.outcome) {
+            Outcome.SUCCESS -> entry.text
+            Outcome.SYNTAX_ERROR -> throw ParseCancellationException(entry.text)
+            Outcome.TYPE_ERROR -> throw IncorrectTypeCancellationException(entry.text)
+        }
+    }
+
+    /**
+     * Returns result of [ChainTransformer.transformOrError].
+     */
+    fun transformOrError(source: String, optimizationDisabled: Boolean, transformer: ChainTransformer): String {
+        val entry = get(source, optimizationDisabled, transformer)
+        return when (entry.outcome) {
+            Outcome.SUCCESS -> entry.text
+            Outcome.SYNTAX_ERROR -> "SYNTAX ERROR"
+            Outcome.TYPE_ERROR -> "TYPE ERROR"
+        }
+    }
+
+    private fun get(source: String, optimizationDisabled: Boolean, transformer: ChainTransformer): Entry {
+        val key = Key(source, optimizationDisabled)
+        val cached = lock.withLock {
+            sketch.increment(key.hashCode())
+            entries[key]
+        }
+        if (cached != null) {
+            hitCounter.incrementAndGet()
+            return cached
+        }
+        missCounter.incrementAndGet()
+
+        val entry = try {
+            entry(key, Outcome.SUCCESS, transformer.transform(source, optimizationDisabled))
+        } catch (ex: ParseCancellationException) {
+            entry(key, Outcome.SYNTAX_ERROR, ex.message ?: "")
+        } catch (ex: IncorrectTypeCancellationException) {
+            entry(key, Outcome.TYPE_ERROR, ex.message ?: "")
+        }
+        lock.withLock { admit(key, entry) }
+        return entry
+    }
+
+    private fun entry(key: Key, outcome: Outcome, text: String): Entry =
+        Entry(outcome, text, ENTRY_OVERHEAD + 2L * (key.source.length + text.length))
+
+    /**
+     * Adds entry if cache has place for it or its key is more frequent than evicted keys.
+     */
+    private fun admit(key: Key, entry: Entry) {
+        if (entry.bytes > maxBytes || entries.containsKey(key)) return
+
+        val frequency = sketch.frequency(key.hashCode())
+        while (entries.size >= maxEntries || bytes + entry.bytes > maxBytes) {
+            val (victimKey, victim) = entries.entries.first()
+            if (sketch.frequency(victimKey.hashCode()) >= frequency) {
+                rejectionCounter.incrementAndGet()
+                return
+            }
+            entries.remove(victimKey)
+            bytes -= victim.bytes
+            evictionCounter.incrementAndGet()
+        }
+        entries[key] = entry
+        bytes += entry.bytes
+    }
+
+    /**
+     * Count-min sketch of 4 rows with counters saturated at 15.
+     * All counters are halved after count of increments reaches 10 times of cache capacity.
+     */
+    private class FrequencySketch(capacity: Int) {
+        private val width = Integer.highestOneBit(maxOf(capacity, 8) * 2 - 1)
+
+        /**
+         * Count of hash bits used as index in row.
+         */
+        private val shift = Int.SIZE_BITS - Integer.numberOfTrailingZeros(width)
+
+        private val counters = ByteArray(ROWS * width)
+
+        private val sampleSize = 10L * capacity
+
+        private var additions = 0L
+
+        fun increment(hash: Int) {
+            var incremented = false
+            for (row in 0 until ROWS) {
+                val index = index(hash, row)
+                if (counters[index] < MAX_COUNT) {
+                    counters[index]++
+                    incremented = true
+                }
+            }
+            if (incremented && ++additions >= sampleSize) {
+                for (i in counters.indices) {
+                    counters[i] = (counters[i].toInt() shr 1).toByte()
+                }
+                additions /= 2
+            }
+        }
+
+        fun frequency(hash: Int): Int {
+            var frequency = MAX_COUNT.toInt()
+            for (row in 0 until ROWS) {
+                frequency = minOf(frequency, counters[index(hash, row)].toInt())
+            }
+            return frequency
+        }
+
+        /**
+         * Multiplicative hashing with own odd multiplier for every row.
+         */
+        private fun index(hash: Int, row: Int): Int {
+            val spread = hash xor (hash ushr 16)
+            return row * width + ((spread * SEEDS[row]) ushr shift)
+        }
+
+        companion object {
+            private const val ROWS = 4
+
+            private const val MAX_COUNT: Byte = 15
+
+            private val SEEDS = intArrayOf(-0x61c8864f, -0x7a143589, -0x3d4d51c3, 0x27d4eb2f)
+        }
+    }
+
+    companion object {
+        /**
+         * Estimated size of entry objects without strings.
+         */
+        private const val ENTRY_OVERHEAD = 128L
+    }
+}
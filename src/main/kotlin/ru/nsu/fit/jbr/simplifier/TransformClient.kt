@@ -0,0 +1,43 @@
+package ru.nsu.fit.jbr.simplifier
+
+import java.io.*
+import java.nio.channels.Channels
+import java.nio.channels.SocketChannel
+
+/**
+ * Client of [TransformServer], keeps one connection for all requests.
+ */
+class TransformClient(address: String) : Closeable {
+
+    private val channel: SocketChannel = TransformProtocol.connect(address)
+
+    private val input = DataInputStream(BufferedInputStream(Channels.newInputStream(channel)))
+
+    private val output = DataOutputStream(BufferedOutputStream(Channels.newOutputStream(channel)))
+
+    /**
+     * Returns response with status and transformed chain or error message.
+     */
+    fun transform(source: String, optimizationDisabled: Boolean): TransformProtocol.Frame {
+        val flags = if (optimizationDisabled) 0 else TransformProtocol.OPTIMIZE
+        TransformProtocol.write(output, flags, source)
+        return TransformProtocol.read(input) ?: throw EOFException("Server closed connection")
+    }
+
+    /**
+     * Returns the same text as [ChainTransformer.transformOrError].
+     */
+    fun transformOrError(source: String, optimizationDisabled: Boolean): String {
+        val response = transform(source, optimizationDisabled)
+        return when (response.code) {
+            TransformProtocol.OK -> response.text
+            TransformProtocol.SYNTAX_ERROR -> "SYNTAX ERROR"
+            TransformProtocol.TYPE_ERROR -> "TYPE ERROR"
+            else -> throw IOException("Server error ${response.code}: ${response.text}")
+        }
+    }
+
+    override fun close() {
+        channel.close()
+    }
+}
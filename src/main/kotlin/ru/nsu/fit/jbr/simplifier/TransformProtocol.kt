@@ -0,0 +1,163 @@
+package ru.nsu.fit.jbr.simplifier
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.lang.reflect.InvocationTargetException
+import java.lang.reflect.Method
+import java.net.BindException
+import java.net.ConnectException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.ProtocolFamily
+import java.net.SocketAddress
+import java.net.StandardProtocolFamily
+import java.nio.channels.ServerSocketChannel
+import java.nio.channels.SocketChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Paths
+
+/**
+ * Framed protocol of [TransformServer] and [TransformClient].
+ * Request: 32-bit big-endian length of the rest, flags byte, chain in UTF-8.
+ * Response: 32-bit big-endian length of the rest, status byte, transformed chain or error message in UTF-8.
+ * Several requests can be sent over one connection, responses come in the same order.
+ *
+ * Address is either "unix:<path>" for Unix domain socket, which needs JDK 16+,
+ * or TCP port on loopback interface, port 0 means any free port.
+ */
+object TransformProtocol {
+    /**
+     * Flag of request: optimize transformed chain.
+     */
+    const val OPTIMIZE = 1
+
+    const val OK = 0
+    const val SYNTAX_ERROR = 1
+    const val TYPE_ERROR = 2
+    /**
+     * Malformed frame, connection is closed after response.
+     */
+    const val BAD_REQUEST = 3
+    const val INTERNAL_ERROR = 4
+
+    /**
+     * Maximal length of frame, longer ones are rejected without reading.
+     */
+    const val MAX_FRAME_LENGTH = 64 * 1024 * 1024
+
+    private const val UNIX_PREFIX = "unix:"
+
+    class Frame(
+        /**
+         * Flags of request or status of response.
+         */
+        val code: Int,
+        val text: String
+    )
+
+    class BadFrameException(message: String) : Exception(message)
+
+    /**
+     * Reads frame, returns null if stream ends before it.
+     */
+    fun read(input: DataInputStream): Frame? {
+        val length = try {
+            input.readInt()
+        } catch (ex: EOFException) {
+            return null
+        }
+        if (length < 1 || length > MAX_FRAME_LENGTH) throw BadFrameException("Incorrect frame length: $length")
+        val code = input.readUnsignedByte()
+        val bytes = ByteArray(length - 1)
+        input.readFully(bytes)
+        return Frame(code, String(bytes, StandardCharsets.UTF_8))
+    }
+
+    fun write(output: DataOutputStream, code: Int, text: String) {
+        val bytes = text.toByteArray(StandardCharsets.UTF_8)
+        output.writeInt(bytes.size + 1)
+        output.writeByte(code)
+        output.write(bytes)
+        output.flush()
+    }
+
+    fun bind(address: String): ServerSocketChannel {
+        val unixPath = unixPath(address)
+        if (unixPath == null) {
+            val channel = ServerSocketChannel.open()
+            channel.bind(InetSocketAddress(InetAddress.getLoopbackAddress(), port(address)))
+            return channel
+        }
+        // socket file of stopped server is left in place, regular files and sockets of running servers are not replaced
+        val path = Paths.get(unixPath)
+        if (Files.exists(path) && !Files.isRegularFile(path) && !Files.isDirectory(path)) {
+            if (isServed(unixPath)) throw BindException("Address is used by running server: $address")
+            Files.delete(path)
+        }
+        val channel = unixChannel(ServerSocketChannel::class.java)
+        channel.bind(unixAddress(unixPath))
+        return channel
+    }
+
+    fun connect(address: String): SocketChannel {
+        val unixPath = unixPath(address)
+            ?: return SocketChannel.open(InetSocketAddress(InetAddress.getLoopbackAddress(), port(address)))
+        val channel = unixChannel(SocketChannel::class.java)
+        try {
+            channel.connect(unixAddress(unixPath))
+        } catch (ex: Throwable) {
+            channel.close()
+            throw ex
+        }
+        return channel
+    }
+
+    /**
+     * Checks if socket file is accepting connections, only refused connection means stale file.
+     */
+    private fun isServed(unixPath: String): Boolean = try {
+        connect(UNIX_PREFIX + unixPath).close()
+        true
+    } catch (ex: ConnectException) {
+        false
+    }
+
+    fun unixPath(address: String): String? =
+        if (address.startsWith(UNIX_PREFIX)) address.substring(UNIX_PREFIX.length) else null
+
+    private fun port(address: String): Int {
+        val port = address.toIntOrNull()
+        require(port != null && port in 0..65535) { "Address should be unix:<path> or TCP port: $address" }
+        return port
+    }
+
+    /**
+     * Unix domain sockets are used reflectively, as project targets Java 8.
+     */
+    private fun <T> unixChannel(type: Class<T>): T {
+        val open = unixApi { type.getMethod("open", ProtocolFamily::class.java) }
+        val family = unixApi { StandardProtocolFamily.valueOf("UNIX") }
+        return type.cast(invoke(open, family))
+    }
+
+    private fun unixAddress(path: String): SocketAddress {
+        val of = unixApi { Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String::class.java) }
+        return invoke(of, path) as SocketAddress
+    }
+
+    private inline fun <T> unixApi(get: () -> T): T = try {
+        get()
+    } catch (ex: ReflectiveOperationException) {
+        throw UnsupportedOperationException("Unix domain sockets need JDK 16+, use TCP port", ex)
+    } catch (ex: IllegalArgumentException) {
+        throw UnsupportedOperationException("Unix domain sockets need JDK 16+, use TCP port", ex)
+    }
+
+    private fun invoke(method: Method, argument: Any): Any = try {
+        method.invoke(null, argument)
+    } catch (ex: InvocationTargetException) {
+        throw ex.targetException
+    }
+}
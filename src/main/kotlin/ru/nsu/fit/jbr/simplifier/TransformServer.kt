@@ -0,0 +1,100 @@
+package ru.nsu.fit.jbr.simplifier
+
+import org.antlr.v4.runtime.misc.ParseCancellationException
+import ru.nsu.fit.jbr.simplifier.ast.IncorrectTypeCancellationException
+import java.io.*
+import java.net.InetSocketAddress
+import java.nio.channels.Channels
+import java.nio.channels.ClosedChannelException
+import java.nio.channels.ServerSocketChannel
+import java.nio.channels.SocketChannel
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Long-lived server transforming chains sent by [TransformProtocol], so clients don't pay for JVM start.
+ * Connections are served by worker pool, every worker reuses its own [ChainTransformer],
+ * and results are shared by workers through [TransformCache].
+ */
+class TransformServer(
+    /**
+     * Address in [TransformProtocol] format.
+     */
+    private val address: String,
+    threads: Int = Runtime.getRuntime().availableProcessors(),
+    private val cache: TransformCache = TransformCache()
+) : Closeable {
+
+    init {
+        require(threads > 0) { "Count of threads should be positive" }
+    }
+
+    private val channel: ServerSocketChannel = TransformProtocol.bind(address)
+
+    private val executor: ExecutorService = Executors.newFixedThreadPool(threads) { task ->
+        Thread(task, "transform-server").apply { isDaemon = true }
+    }
+
+    private val transformers = ThreadLocal.withInitial { ChainTransformer() }
+
+    /**
+     * Bound TCP port, or -1 for Unix domain socket.
+     */
+    val port: Int
+        get() = (channel.localAddress as? InetSocketAddress)?.port ?: -1
+
+    /**
+     * Accepts connections until server is closed.
+     */
+    fun serve() {
+        try {
+            while (true) {
+                val connection = channel.accept()
+                executor.execute { handle(connection) }
+            }
+        } catch (ex: ClosedChannelException) {
+            // server is closed
+        }
+    }
+
+    override fun close() {
+        channel.close()
+        executor.shutdownNow()
+        TransformProtocol.unixPath(address)?.let { Files.deleteIfExists(Paths.get(it)) }
+    }
+
+    private fun handle(connection: SocketChannel) {
+        connection.use {
+            val input = DataInputStream(BufferedInputStream(Channels.newInputStream(connection)))
+            val output = DataOutputStream(BufferedOutputStream(Channels.newOutputStream(connection)))
+            try {
+                while (true) {
+                    val request = TransformProtocol.read(input) ?: break
+                    respond(request, output)
+                }
+            } catch (ex: TransformProtocol.BadFrameException) {
+                TransformProtocol.write(output, TransformProtocol.BAD_REQUEST, ex.message ?: "")
+            } catch (ex: IOException) {
+                // client has gone, nothing to answer
+            }
+        }
+    }
+
+    private fun respond(request: TransformProtocol.Frame, output: DataOutputStream) {
+        val optimizationDisabled = request.code and TransformProtocol.OPTIMIZE == 0
+        val (status, text) = try {
+            TransformProtocol.OK to cache.transform(request.text, optimizationDisabled, transformers.get())
+        } catch (ex: ParseCancellationException) {
+            TransformProtocol.SYNTAX_ERROR to (ex.message ?: "")
+        } catch (ex: IncorrectTypeCancellationException) {
+            TransformProtocol.TYPE_ERROR to (ex.message ?: "")
+        } catch (ex: RuntimeException) {
+            TransformProtocol.INTERNAL_ERROR to ex.toString()
+        } catch (ex: StackOverflowError) {
+            TransformProtocol.INTERNAL_ERROR to "Chain is too deep"
+        }
+        TransformProtocol.write(output, status, text)
+    }
+}
@@ -0,0 +1,79 @@
+package ru.nsu.fit.jbr.simplifier.antlrinterop
+
+import org.antlr.v4.runtime.BailErrorStrategy
+import org.antlr.v4.runtime.CharStreams
+import org.antlr.v4.runtime.CommonTokenStream
+import org.antlr.v4.runtime.DefaultErrorStrategy
+import org.antlr.v4.runtime.atn.PredictionMode
+import org.antlr.v4.runtime.misc.ParseCancellationException
+import ru.nsu.fit.jbr.simplifier.antlr.CallChainLexer
+import ru.nsu.fit.jbr.simplifier.antlr.CallChainParser
+import ru.nsu.fit.jbr.simplifier.ast.CallChain
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Parses call chains with ANTLR4 lexer and parser, reusing them between sources.
+ * Every source is parsed in fast SLL prediction mode first, bailing out on the first error,
+ * and is parsed again in full LL mode only if SLL failed.
+ * Not thread-safe, see [AntlrParsers] for parsers of threads.
+ */
+class AntlrChainParser(private val statistics: Statistics = Statistics()) {
+
+    /**
+     * Counts of parses finished by every stage.
+     */
+    class Statistics {
+        val sllParses = AtomicLong()
+
+        val llParses = AtomicLong()
+
+        /**
+         * Parses failed with syntax error in LL mode.
+         */
+        val failedParses = AtomicLong()
+    }
+
+    private val lexer = CallChainLexer(CharStreams.fromString("")).apply {
+        removeErrorListeners()
+        addErrorListener(ThrowingErrorListener.INSTANCE)
+    }
+
+    private val tokens = CommonTokenStream(lexer)
+
+    private val parser = CallChainParser(tokens)
+
+    private val astCreator = AstCreator()
+
+    fun parse(source: String): CallChain {
+        lexer.inputStream = CharStreams.fromString(source)
+        tokens.tokenSource = lexer
+        parser.tokenStream = tokens
+        return astCreator.visitCallChain(parseTree())
+    }
+
+    private fun parseTree(): CallChainParser.CallChainContext {
+        parser.interpreter.predictionMode = PredictionMode.SLL
+        parser.errorHandler = BailErrorStrategy()
+        parser.removeErrorListeners()
+        try {
+            val tree = parser.callChain()
+            statistics.sllParses.incrementAndGet()
+            return tree
+        } catch (ex: ParseCancellationException) {
+            // SLL may fail on correct source, so it is parsed again with full LL
+        }
+
+        parser.reset()
+        parser.interpreter.predictionMode = PredictionMode.LL
+        parser.errorHandler = DefaultErrorStrategy()
+        parser.addErrorListener(ThrowingErrorListener.INSTANCE)
+        try {
+            val tree = parser.callChain()
+            statistics.llParses.incrementAndGet()
+            return tree
+        } catch (ex: ParseCancellationException) {
+            statistics.failedParses.incrementAndGet()
+            throw ex
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ru.nsu.fit.jbr.simplifier.antlrinterop
+
+import org.antlr.v4.runtime.misc.ParseCancellationException
+import ru.nsu.fit.jbr.simplifier.ast.CallChain
+import ru.nsu.fit.jbr.simplifier.ast.IncorrectTypeCancellationException
+
+/**
+ * ANTLR4 parsers of threads with shared statistics.
+ * Generated parsers share DFA cache, so it is warmed up with representative chains on first use.
+ */
+object AntlrParsers {
+
+    /**
+     * Chains covering all rules and operations of grammar.
+     */
+    private val warmUpCorpus = listOf(
+        "map{element}",
+        "filter{(element>10)}%>%filter{(element<20)}",
+        "map{(element+10)}%>%filter{(element>10)}%>%map{(element*element)}",
+        "filter{(element<30)}%>%map{(element+-10)}%>%filter{(element=10)}%>%map{(element-1)}",
+        "filter{((element<-30)|((element>5)&(element<50)))}%>%map{((element*element)-(3*element))}",
+        "let{t:=(element*2)}%>%map{(t+element)}%>%filter{((t>element)|(element=7))}%>%map{(t-element)}"
+    )
+
+    val statistics = AntlrChainParser.Statistics()
+
+    private val parsers = ThreadLocal.withInitial { AntlrChainParser(statistics) }
+
+    init {
+        warmUp(warmUpCorpus)
+    }
+
+    fun parse(source: String): CallChain = parsers.get().parse(source)
+
+    /**
+     * Parses chains to fill DFA cache, ignoring errors.
+     */
+    fun warmUp(corpus: Iterable<String>) {
+        val parser = AntlrChainParser()
+        for (source in corpus) {
+            try {
+                parser.parse(source)
+            } catch (ex: ParseCancellationException) {
+            } catch (ex: IncorrectTypeCancellationException) {
+            }
+        }
+    }
+}
@@ -10,12 +10,18 @@ import ru.nsu.fit.jbr.simplifier.ast.*
  */
 class AstCreator: CallChainBaseVisitor<AstNode>() {
 
+    /**
+     * Names bound by already visited let calls.
+     */
+    private val names = HashSet<String>()
+
     override fun visitCallChain(ctx: CallChainParser.CallChainContext?): CallChain {
         if (ctx == null) throw ParseCancellationException("Call chain context is not defined")
 
         val calls = ctx.call()
         if (calls == null || calls.isEmpty()) throw ParseCancellationException("Call chain context is incorrect")
 
+        names.clear()
         return CallChain(calls.map{ visitCall(it) as Call }.toMutableList())
     }
 
@@ -37,10 +43,22 @@ class AstCreator: CallChainBaseVisitor<AstNode>() {
         return MapCall(expr)
     }
 
+    override fun visitLetCall(ctx: CallChainParser.LetCallContext?): LetCall {
+        if (ctx == null) throw ParseCancellationException("Let call context is not defined")
+        val name = ctx.NAME()?.text
+        if (name == null || ctx.expr() == null) throw ParseCancellationException("Let call context is incorrect")
+
+        val expr = visitExpr(ctx.expr())
+        if (expr !is ArithmExpr) throw IncorrectTypeCancellationException("Incorrect type for let expression")
+        names.add(name)
+        return LetCall(name, expr)
+    }
+
     override fun visitExpr(ctx: CallChainParser.ExprContext?): AstNode {
         return when {
             ctx == null -> throw ParseCancellationException("Expression context is not defined")
             ctx.ELEMENT() != null -> Element
+            ctx.NAME() != null -> visitName(ctx.NAME().text)
             ctx.constExpr() != null -> visitConstExpr(ctx.constExpr())
             ctx.binExpr() != null -> visitBinExpr(ctx.binExpr())
             else -> throw ParseCancellationException("Expression context is incorrect")
@@ -49,7 +67,7 @@ class AstCreator: CallChainBaseVisitor<AstNode>() {
 
     override fun visitBinExpr(ctx: CallChainParser.BinExprContext?): AstNode {
         if (ctx == null) throw ParseCancellationException("Binary expression context is not defined")
-        val op = ctx.OPERATION().text
+        val op = ctx.op?.text
         val leftCtx = ctx.expr(0)
         val rightCtx = ctx.expr(1)
         if (op == null || leftCtx == null || rightCtx == null) {
@@ -86,6 +104,11 @@ class AstCreator: CallChainBaseVisitor<AstNode>() {
         }
     }
 
+    private fun visitName(name: String): Reference {
+        if (name !in names) throw ParseCancellationException("Name is not defined: $name")
+        return Reference(name)
+    }
+
     override fun visitConstExpr(ctx: CallChainParser.ConstExprContext?): ConstExpr {
         if (ctx == null) throw ParseCancellationException("Constant expression context is not defined")
 
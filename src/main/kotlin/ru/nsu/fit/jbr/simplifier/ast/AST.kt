@@ -1,7 +1,9 @@
 package ru.nsu.fit.jbr.simplifier.ast
 
 /**
- * Base interface of all nodes of internal AST implementation
+ * Base interface of all nodes of internal AST implementation.
+ * Nodes are immutable, so subtrees can be safely shared between several parents.
+ * Structural hashes of expression nodes are computed once on creation.
  */
 interface AstNode {
     fun <T> accept(visitor: Visitor<T>): T
@@ -9,7 +11,7 @@ interface AstNode {
     fun clone(): AstNode
 }
 
-data class CallChain(val calls: MutableList<Call>): AstNode {
+data class CallChain(val calls: List<Call>): AstNode {
     override fun <T> accept(visitor: Visitor<T>): T {
         return visitor.visit(this)
     }
@@ -21,7 +23,7 @@ data class CallChain(val calls: MutableList<Call>): AstNode {
 
 interface Call: AstNode
 
-data class FilterCall(var expr: LogicExpr): Call {
+data class FilterCall(val expr: LogicExpr): Call {
     override fun <T> accept(visitor: Visitor<T>): T {
         return visitor.visit(this)
     }
@@ -45,10 +47,18 @@ enum class LogicType(val op: String) {
     }
 }
 
-data class BinLogicExpr(var left: LogicExpr, var type: LogicType, var right: LogicExpr): LogicExpr() {
+data class BinLogicExpr(val left: LogicExpr, val type: LogicType, val right: LogicExpr): LogicExpr() {
+    private val hash = structuralHash(left, type.ordinal, right)
+
     override fun <T> accept(visitor: Visitor<T>): T = visitor.visit(this)
 
     override fun clone(): BinLogicExpr = copy()
+
+    override fun hashCode(): Int = hash
+
+    override fun equals(other: Any?): Boolean = this === other
+            || other is BinLogicExpr && hash == other.hash && type == other.type
+            && left == other.left && right == other.right
 }
 
 enum class CmpType(val op: String) {
@@ -67,18 +77,35 @@ enum class CmpType(val op: String) {
     }
 }
 
-data class CmpExpr(var left: ArithmExpr, var type: CmpType, var right: ArithmExpr): LogicExpr() {
+data class CmpExpr(val left: ArithmExpr, val type: CmpType, val right: ArithmExpr): LogicExpr() {
+    private val hash = structuralHash(left, type.ordinal, right)
+
     override fun <T> accept(visitor: Visitor<T>): T = visitor.visit(this)
 
     override fun clone(): CmpExpr = copy()
+
+    override fun hashCode(): Int = hash
+
+    override fun equals(other: Any?): Boolean = this === other
+            || other is CmpExpr && hash == other.hash && type == other.type
+            && left == other.left && right == other.right
 }
 
-data class MapCall(var expr: ArithmExpr): Call {
+data class MapCall(val expr: ArithmExpr): Call {
     override fun <T> accept(visitor: Visitor<T>): T = visitor.visit(this)
 
     override fun clone(): MapCall = copy()
 }
 
+/**
+ * Binds value of expression for current element to name, so following calls can reference it.
+ */
+data class LetCall(val name: String, val expr: ArithmExpr): Call {
+    override fun <T> accept(visitor: Visitor<T>): T = visitor.visit(this)
+
+    override fun clone(): LetCall = copy()
+}
+
 sealed class ArithmExpr: AstNode {
     abstract override fun clone(): ArithmExpr
 }
@@ -93,28 +120,55 @@ enum class ArithmType(val op: String) {
     }
 }
 
-data class BinArithmExpr(var left: ArithmExpr, var type: ArithmType, var right: ArithmExpr): ArithmExpr() {
+data class BinArithmExpr(val left: ArithmExpr, val type: ArithmType, val right: ArithmExpr): ArithmExpr() {
+    private val hash = structuralHash(left, type.ordinal, right)
+
     override fun <T> accept(visitor: Visitor<T>): T = visitor.visit(this)
 
     override fun clone(): BinArithmExpr = copy()
+
+    override fun hashCode(): Int = hash
+
+    override fun equals(other: Any?): Boolean = this === other
+            || other is BinArithmExpr && hash == other.hash && type == other.type
+            && left == other.left && right == other.right
 }
 
 object Element: ArithmExpr() {
     override fun <T> accept(visitor: Visitor<T>): T = visitor.visit(this)
 
     override fun clone(): Element = this
+
+    override fun hashCode(): Int = 1
+
+    override fun toString(): String = "Element"
+}
+
+/**
+ * Value bound to name by preceding let call.
+ */
+data class Reference(val name: String): ArithmExpr() {
+    override fun <T> accept(visitor: Visitor<T>): T = visitor.visit(this)
+
+    override fun clone(): Reference = copy()
 }
 
 sealed class ConstExpr: ArithmExpr()
 
-data class MinusExpr(var number: NumberExpr): ConstExpr() {
+data class MinusExpr(val number: NumberExpr): ConstExpr() {
     override fun <T> accept(visitor: Visitor<T>): T = visitor.visit(this)
 
     override fun clone(): MinusExpr = copy()
 }
 
-data class NumberExpr(var value: String): ConstExpr() {
+data class NumberExpr(val value: String): ConstExpr() {
     override fun <T> accept(visitor: Visitor<T>): T = visitor.visit(this)
 
     override fun clone(): NumberExpr = copy()
 }
+
+/**
+ * Combines cached hashes of children, so hashing a node never walks its subtrees.
+ */
+private fun structuralHash(left: AstNode, type: Int, right: AstNode): Int =
+    (31 * left.hashCode() + type) * 31 + right.hashCode()
@@ -0,0 +1,84 @@
+package ru.nsu.fit.jbr.simplifier.ast
+
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Hash-consing factory of expression nodes.
+ * Structurally equal nodes created by the same factory are the same instance,
+ * so transformations share subtrees instead of copying them.
+ */
+class AstFactory(
+    /**
+     * If true, factory can be used by several threads at once.
+     */
+    concurrent: Boolean = false
+) {
+
+    private val nodes: MutableMap<AstNode, AstNode> = if (concurrent) ConcurrentHashMap() else HashMap()
+
+    /**
+     * Count of distinct nodes created by this factory.
+     */
+    val size: Int
+        get() = nodes.size
+
+    fun binLogic(left: LogicExpr, type: LogicType, right: LogicExpr): BinLogicExpr =
+        intern(BinLogicExpr(left, type, right))
+
+    fun cmp(left: ArithmExpr, type: CmpType, right: ArithmExpr): CmpExpr =
+        intern(CmpExpr(left, type, right))
+
+    fun binArithm(left: ArithmExpr, type: ArithmType, right: ArithmExpr): BinArithmExpr =
+        intern(BinArithmExpr(left, type, right))
+
+    fun number(value: String): NumberExpr = intern(NumberExpr(value))
+
+    fun minus(number: NumberExpr): MinusExpr = intern(MinusExpr(intern(number)))
+
+    fun reference(name: String): Reference = intern(Reference(name))
+
+    /**
+     * Returns canonical instance of node. Children of node are expected to be canonical already.
+     */
+    @Suppress("UNCHECKED_CAST")
+    fun <T : AstNode> intern(node: T): T = (nodes.putIfAbsent(node, node) ?: node) as T
+
+    /**
+     * Returns canonical instance of expression with all its subtrees interned.
+     */
+    fun <T : AstNode> canonical(node: T): T {
+        @Suppress("UNCHECKED_CAST")
+        return node.accept(InterningVisitor()) as T
+    }
+
+    /**
+     * Interns tree bottom-up. Every distinct node instance is visited once, so shared subtrees are not expanded.
+     */
+    private inner class InterningVisitor : CopyVisitor {
+        private val visited = IdentityHashMap<AstNode, AstNode>()
+
+        private fun <T : AstNode> visited(node: T, create: () -> T): T {
+            @Suppress("UNCHECKED_CAST")
+            return visited.getOrPut(node) { create() } as T
+        }
+
+        override fun visit(node: BinLogicExpr): AstNode = visited(node) {
+            binLogic(node.left.accept(this) as LogicExpr, node.type, node.right.accept(this) as LogicExpr)
+        }
+
+        override fun visit(node: CmpExpr): AstNode = visited(node) {
+            cmp(node.left.accept(this) as ArithmExpr, node.type, node.right.accept(this) as ArithmExpr)
+        }
+
+        override fun visit(node: BinArithmExpr): AstNode = visited(node) {
+            binArithm(node.left.accept(this) as ArithmExpr, node.type, node.right.accept(this) as ArithmExpr)
+        }
+
+        override fun visit(node: Reference): ArithmExpr = intern(node)
+
+        override fun visit(node: MinusExpr): ArithmExpr = minus(node.number)
+
+        override fun visit(node: NumberExpr): NumberExpr = intern(node)
+    }
+}
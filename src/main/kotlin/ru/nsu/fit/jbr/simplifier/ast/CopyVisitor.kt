@@ -36,6 +36,10 @@ interface CopyVisitor: Visitor<AstNode> {
         return MapCall(node.expr.accept(this) as ArithmExpr)
     }
 
+    override fun visit(node: LetCall): Call {
+        return LetCall(node.name, node.expr.accept(this) as ArithmExpr)
+    }
+
     override fun visit(node: BinArithmExpr): AstNode {
         return BinArithmExpr(
             node.left.accept(this) as ArithmExpr,
@@ -48,6 +52,10 @@ interface CopyVisitor: Visitor<AstNode> {
         return node
     }
 
+    override fun visit(node: Reference): ArithmExpr {
+        return node
+    }
+
     override fun visit(node: MinusExpr): ArithmExpr {
         return MinusExpr(node.number.accept(this) as NumberExpr)
     }
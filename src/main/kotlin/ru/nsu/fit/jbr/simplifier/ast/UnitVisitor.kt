@@ -30,6 +30,10 @@ interface UnitVisitor: Visitor<Unit> {
         node.expr.accept(this)
     }
 
+    override fun visit(node: LetCall) {
+        node.expr.accept(this)
+    }
+
     override fun visit(node: BinArithmExpr) {
         node.left.accept(this)
         node.right.accept(this)
@@ -37,6 +41,8 @@ interface UnitVisitor: Visitor<Unit> {
 
     override fun visit(node: Element) {}
 
+    override fun visit(node: Reference) {}
+
     override fun visit(node: MinusExpr) {
         node.number.accept(this)
     }
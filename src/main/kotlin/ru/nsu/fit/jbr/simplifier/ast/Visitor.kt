@@ -10,8 +10,10 @@ interface Visitor<T> {
     fun visit(node: BinLogicExpr): T
     fun visit(node: CmpExpr): T
     fun visit(node: MapCall): T
+    fun visit(node: LetCall): T
     fun visit(node: BinArithmExpr): T
     fun visit(node: Element): T
+    fun visit(node: Reference): T
     fun visit(node: MinusExpr): T
     fun visit(node: NumberExpr): T
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package ru.nsu.fit.jbr.simplifier.execution
+
+/**
+ * Evaluates call chain for arrays of elements.
+ * Implementations may keep scratch buffers, so they are not thread-safe.
+ */
+interface BatchEvaluator {
+
+    /**
+     * Evaluates chain for elements input[offset until offset + length].
+     * Values of passed elements are written to the beginning of output in input order.
+     * If selection is given, indices of passed elements in input are written to it in the same order.
+     * Output and selection should have place for length elements.
+     *
+     * @return count of passed elements
+     */
+    fun evaluate(input: IntArray, offset: Int, length: Int, output: IntArray, selection: IntArray? = null): Int
+}
+
+/**
+ * Evaluates elements one by one with kernel.
+ */
+class ScalarBatchEvaluator(private val kernel: ElementKernel) : BatchEvaluator {
+
+    override fun evaluate(input: IntArray, offset: Int, length: Int, output: IntArray, selection: IntArray?): Int {
+        var count = 0
+        for (i in offset until offset + length) {
+            val result = kernel.evaluate(input[i])
+            if (ElementKernel.isPassed(result)) {
+                output[count] = ElementKernel.valueOf(result)
+                if (selection != null) {
+                    selection[count] = i
+                }
+                count++
+            }
+        }
+        return count
+    }
+}
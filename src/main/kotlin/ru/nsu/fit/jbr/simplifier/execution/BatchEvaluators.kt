@@ -0,0 +1,40 @@
+package ru.nsu.fit.jbr.simplifier.execution
+
+import ru.nsu.fit.jbr.simplifier.ast.CallChain
+import java.lang.reflect.Constructor
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * Creates the fastest batch evaluator available in running JVM.
+ * SIMD evaluator is used when it is packaged and JVM is started with --add-modules jdk.incubator.vector,
+ * otherwise columnar evaluator is used.
+ */
+object BatchEvaluators {
+
+    private const val VECTOR_EVALUATOR = "ru.nsu.fit.jbr.simplifier.execution.vector.VectorBatchEvaluator"
+
+    private val vectorConstructor: Constructor<*>? = try {
+        Class.forName("jdk.incubator.vector.IntVector")
+        Class.forName(VECTOR_EVALUATOR).getConstructor(CallChain::class.java, Int::class.javaPrimitiveType)
+    } catch (ex: ReflectiveOperationException) {
+        null
+    } catch (ex: LinkageError) {
+        null
+    }
+
+    /**
+     * Whether SIMD evaluator is available.
+     */
+    val vectorAvailable: Boolean
+        get() = vectorConstructor != null
+
+    fun create(chain: CallChain, blockSize: Int = 1024): BatchEvaluator =
+        vectorConstructor?.newInstance(chain, blockSize) as BatchEvaluator?
+            ?: ColumnarBatchEvaluator(chain, blockSize)
+
+    /**
+     * Creates evaluator splitting large inputs between threads of pool.
+     */
+    fun createParallel(chain: CallChain, pool: ForkJoinPool = ForkJoinPool.commonPool()): BatchEvaluator =
+        ParallelBatchEvaluator({ create(chain) }, pool)
+}
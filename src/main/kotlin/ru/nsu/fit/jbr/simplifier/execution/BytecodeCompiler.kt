@@ -0,0 +1,305 @@
+package ru.nsu.fit.jbr.simplifier.execution
+
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Label
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes.*
+import org.objectweb.asm.Type
+import ru.nsu.fit.jbr.simplifier.ast.*
+import ru.nsu.fit.jbr.simplifier.transformation.CommonSubexpressionEliminator
+import ru.nsu.fit.jbr.simplifier.transformation.IntervalSet
+import java.lang.invoke.MethodHandles
+import java.lang.reflect.InvocationTargetException
+import java.lang.reflect.Method
+
+/**
+ * Compiles call chain to JVM class implementing [ElementKernel].
+ * Filters become conditional jumps to rejection, maps and let calls - stores to local variables,
+ * constants are pushed as bytecode literals.
+ * Filters comparing element with constants only become binary search over interval bounds.
+ * Class is defined as hidden class on JDK 15+ and by separate class loader on older JDKs,
+ * so it can be unloaded as soon as kernel is not used.
+ */
+class BytecodeCompiler {
+
+    companion object {
+        private val kernelName = Type.getInternalName(ElementKernel::class.java)
+
+        /**
+         * Hidden class must be in the package of lookup class.
+         */
+        private val className = BytecodeCompiler::class.java.name.replace('.', '/')
+            .substringBeforeLast('/') + "/CompiledChain"
+
+        /**
+         * Index of local variable with current element.
+         */
+        private const val ELEMENT_SLOT = 1
+
+        /**
+         * Lookup.defineHiddenClass(byte[], boolean, ClassOption...) if it is available.
+         */
+        private val defineHiddenClass: Method? = try {
+            val optionClass = Class.forName("java.lang.invoke.MethodHandles\$Lookup\$ClassOption")
+            val optionsClass = java.lang.reflect.Array.newInstance(optionClass, 0).javaClass
+            MethodHandles.Lookup::class.java.getMethod(
+                "defineHiddenClass",
+                ByteArray::class.java,
+                Boolean::class.javaPrimitiveType,
+                optionsClass
+            )
+        } catch (ex: ReflectiveOperationException) {
+            null
+        }
+    }
+
+    /**
+     * Compiles call chain. Shared subexpressions are computed once.
+     */
+    fun compile(chain: CallChain): ElementKernel {
+        val bytes = generate(CommonSubexpressionEliminator().eliminate(chain))
+        val kernelClass = define(bytes)
+        return kernelClass.getDeclaredConstructor().newInstance() as ElementKernel
+    }
+
+    private fun generate(chain: CallChain): ByteArray {
+        val writer = ClassWriter(ClassWriter.COMPUTE_FRAMES)
+        writer.visit(V1_8, ACC_PUBLIC or ACC_FINAL or ACC_SUPER, className, null, "java/lang/Object", arrayOf(kernelName))
+
+        val init = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null)
+        init.visitCode()
+        init.visitVarInsn(ALOAD, 0)
+        init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false)
+        init.visitInsn(RETURN)
+        init.visitMaxs(0, 0)
+        init.visitEnd()
+
+        val evaluate = writer.visitMethod(ACC_PUBLIC or ACC_FINAL, "evaluate", "(I)J", null, null)
+        evaluate.visitCode()
+        MethodGenerator(evaluate).generate(chain)
+        evaluate.visitMaxs(0, 0)
+        evaluate.visitEnd()
+
+        writer.visitEnd()
+        return writer.toByteArray()
+    }
+
+    private fun define(bytes: ByteArray): Class<*> {
+        val defineHidden = defineHiddenClass ?: return KernelClassLoader(javaClass.classLoader).define(bytes)
+        val options = java.lang.reflect.Array.newInstance(defineHidden.parameterTypes[2].componentType, 0)
+        val hiddenLookup = try {
+            defineHidden.invoke(MethodHandles.lookup(), bytes, true, options) as MethodHandles.Lookup
+        } catch (ex: InvocationTargetException) {
+            // errors of class definition are the same as without hidden classes
+            throw ex.targetException
+        }
+        return hiddenLookup.lookupClass()
+    }
+
+    /**
+     * Class loader for single kernel class, used when hidden classes are not supported.
+     */
+    private class KernelClassLoader(parent: ClassLoader?) : ClassLoader(parent) {
+        fun define(bytes: ByteArray): Class<*> = defineClass(null, bytes, 0, bytes.size)
+    }
+
+    /**
+     * Generates body of evaluate(int) method.
+     */
+    private class MethodGenerator(private val method: MethodVisitor) {
+
+        /**
+         * Local variables of bound names.
+         */
+        private val slots = HashMap<String, Int>()
+
+        private var nextSlot = ELEMENT_SLOT + 1
+
+        fun generate(chain: CallChain) {
+            val reject = Label()
+            for (call in chain.calls) {
+                when (call) {
+                    is FilterCall -> jumpIfFalse(call.expr, reject)
+                    is MapCall -> {
+                        arithm(call.expr)
+                        method.visitVarInsn(ISTORE, ELEMENT_SLOT)
+                    }
+                    is LetCall -> {
+                        arithm(call.expr)
+                        val slot = nextSlot++
+                        method.visitVarInsn(ISTORE, slot)
+                        slots[call.name] = slot
+                    }
+                    else -> throw IllegalArgumentException("Unknown call: $call")
+                }
+            }
+
+            // PASSED | (element & 0xFFFFFFFF)
+            method.visitVarInsn(ILOAD, ELEMENT_SLOT)
+            method.visitInsn(I2L)
+            method.visitLdcInsn(0xFFFFFFFFL)
+            method.visitInsn(LAND)
+            method.visitLdcInsn(ElementKernel.PASSED)
+            method.visitInsn(LOR)
+            method.visitInsn(LRETURN)
+
+            method.visitLabel(reject)
+            method.visitLdcInsn(ElementKernel.REJECTED)
+            method.visitInsn(LRETURN)
+        }
+
+        private fun jumpIfFalse(expr: LogicExpr, target: Label) {
+            val set = intervals(expr)
+            if (set != null) {
+                val passed = Label()
+                jumpByIntervals(set, 0, set.intervalCount - 1, passed, target)
+                method.visitLabel(passed)
+                return
+            }
+            when (expr) {
+                is CmpExpr -> {
+                    arithm(expr.left)
+                    arithm(expr.right)
+                    val opcode = when (expr.type) {
+                        CmpType.MORE -> IF_ICMPLE
+                        CmpType.LESS -> IF_ICMPGE
+                        CmpType.EQ -> IF_ICMPNE
+                    }
+                    method.visitJumpInsn(opcode, target)
+                }
+                is BinLogicExpr -> when (expr.type) {
+                    LogicType.AND -> {
+                        jumpIfFalse(expr.left, target)
+                        jumpIfFalse(expr.right, target)
+                    }
+                    LogicType.OR -> {
+                        val passed = Label()
+                        jumpIfTrue(expr.left, passed)
+                        jumpIfFalse(expr.right, target)
+                        method.visitLabel(passed)
+                    }
+                }
+            }
+        }
+
+        private fun jumpIfTrue(expr: LogicExpr, target: Label) {
+            val set = intervals(expr)
+            if (set != null) {
+                val failed = Label()
+                jumpByIntervals(set, 0, set.intervalCount - 1, target, failed)
+                method.visitLabel(failed)
+                return
+            }
+            when (expr) {
+                is CmpExpr -> {
+                    arithm(expr.left)
+                    arithm(expr.right)
+                    val opcode = when (expr.type) {
+                        CmpType.MORE -> IF_ICMPGT
+                        CmpType.LESS -> IF_ICMPLT
+                        CmpType.EQ -> IF_ICMPEQ
+                    }
+                    method.visitJumpInsn(opcode, target)
+                }
+                is BinLogicExpr -> when (expr.type) {
+                    LogicType.AND -> {
+                        val failed = Label()
+                        jumpIfFalse(expr.left, failed)
+                        jumpIfTrue(expr.right, target)
+                        method.visitLabel(failed)
+                    }
+                    LogicType.OR -> {
+                        jumpIfTrue(expr.left, target)
+                        jumpIfTrue(expr.right, target)
+                    }
+                }
+            }
+        }
+
+        /**
+         * Interval set of logic operation on comparisons of element with constants.
+         * Single comparisons are compiled as they are.
+         */
+        private fun intervals(expr: LogicExpr): IntervalSet? = if (expr is BinLogicExpr) IntervalSet.of(expr) else null
+
+        /**
+         * Jumps to inside if element belongs to intervals first..last of set, otherwise jumps to outside.
+         * Interval is found by comparisons with lower bounds, then it is checked
+         * by single unsigned comparison: (e - lower) <= (upper - lower).
+         */
+        private fun jumpByIntervals(set: IntervalSet, first: Int, last: Int, inside: Label, outside: Label) {
+            if (first > last) {
+                method.visitJumpInsn(GOTO, outside)
+                return
+            }
+            if (first < last) {
+                val mid = (first + last + 1) ushr 1
+                val upperHalf = Label()
+                method.visitVarInsn(ILOAD, ELEMENT_SLOT)
+                pushConst(set.lower(mid))
+                method.visitJumpInsn(IF_ICMPGE, upperHalf)
+                jumpByIntervals(set, first, mid - 1, inside, outside)
+                method.visitLabel(upperHalf)
+                jumpByIntervals(set, mid, last, inside, outside)
+                return
+            }
+            val lower = set.lower(first)
+            val upper = set.upper(first)
+            method.visitVarInsn(ILOAD, ELEMENT_SLOT)
+            when {
+                // lower bound is checked by previous comparisons or absent
+                lower == Int.MIN_VALUE || first > 0 -> {
+                    if (upper != Int.MAX_VALUE) {
+                        pushConst(upper)
+                        method.visitJumpInsn(IF_ICMPGT, outside)
+                    } else {
+                        method.visitInsn(POP)
+                    }
+                }
+                upper == Int.MAX_VALUE -> {
+                    pushConst(lower)
+                    method.visitJumpInsn(IF_ICMPLT, outside)
+                }
+                else -> {
+                    pushConst(Int.MIN_VALUE - lower)
+                    method.visitInsn(IADD)
+                    pushConst((upper - lower) xor Int.MIN_VALUE)
+                    method.visitJumpInsn(IF_ICMPGT, outside)
+                }
+            }
+            method.visitJumpInsn(GOTO, inside)
+        }
+
+        private fun arithm(expr: ArithmExpr) {
+            when (expr) {
+                is BinArithmExpr -> {
+                    arithm(expr.left)
+                    arithm(expr.right)
+                    method.visitInsn(
+                        when (expr.type) {
+                            ArithmType.PLUS -> IADD
+                            ArithmType.MINUS -> ISUB
+                            ArithmType.MULT -> IMUL
+                        }
+                    )
+                }
+                is Element -> method.visitVarInsn(ILOAD, ELEMENT_SLOT)
+                is Reference -> {
+                    val slot = slots[expr.name] ?: throw IllegalArgumentException("Name is not bound: ${expr.name}")
+                    method.visitVarInsn(ILOAD, slot)
+                }
+                is NumberExpr -> pushConst(expr.value.toInt())
+                is MinusExpr -> pushConst(-expr.number.value.toInt())
+            }
+        }
+
+        private fun pushConst(value: Int) {
+            when (value) {
+                in -1..5 -> method.visitInsn(ICONST_0 + value)
+                in Byte.MIN_VALUE..Byte.MAX_VALUE -> method.visitIntInsn(BIPUSH, value)
+                in Short.MIN_VALUE..Short.MAX_VALUE -> method.visitIntInsn(SIPUSH, value)
+                else -> method.visitLdcInsn(value)
+            }
+        }
+    }
+}
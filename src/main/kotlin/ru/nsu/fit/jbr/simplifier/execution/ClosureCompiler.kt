@@ -0,0 +1,229 @@
+package ru.nsu.fit.jbr.simplifier.execution
+
+import ru.nsu.fit.jbr.simplifier.ast.*
+import ru.nsu.fit.jbr.simplifier.transformation.IntervalSet
+import ru.nsu.fit.jbr.simplifier.transformation.Polynomial
+import java.util.function.IntPredicate
+import java.util.function.IntToLongFunction
+import java.util.function.IntUnaryOperator
+
+/**
+ * Compiles call chain to tree of closures: arithmetic expressions become [IntUnaryOperator],
+ * logic expressions - [IntPredicate], and calls are chained in continuation style.
+ * Constants are parsed once, and common shapes like "element OP const" get specialized closures.
+ * All closure classes are generated by Kotlin compiler, so no classes are defined at runtime.
+ */
+class ClosureCompiler {
+
+    /**
+     * Compiles call chain. Kernel of chain with let calls keeps bound values,
+     * so it must be used by one thread at a time.
+     */
+    fun compile(chain: CallChain): ElementKernel {
+        val registers = HashMap<String, Int>()
+        val lets = chain.calls.filterIsInstance<LetCall>()
+        for (let in lets) {
+            registers.putIfAbsent(let.name, registers.size)
+        }
+        return ClosureKernel(ChainCompiler(registers, IntArray(registers.size)).compile(chain.calls))
+    }
+
+    private class ClosureKernel(private val entry: IntToLongFunction) : ElementKernel {
+        override fun evaluate(element: Int): Long = entry.applyAsLong(element)
+    }
+
+    private class ChainCompiler(
+        /**
+         * Indices of bound names in slots.
+         */
+        private val registers: Map<String, Int>,
+        /**
+         * Values of bound names for current element.
+         */
+        private val slots: IntArray
+    ) {
+
+        /**
+         * Compiles calls from last to first, so every call closure knows the following one.
+         */
+        fun compile(calls: List<Call>): IntToLongFunction {
+            var next = IntToLongFunction { ElementKernel.passed(it) }
+            for (call in calls.asReversed()) {
+                val following = next
+                next = when (call) {
+                    is FilterCall -> {
+                        val predicate = logic(call.expr)
+                        IntToLongFunction { if (predicate.test(it)) following.applyAsLong(it) else ElementKernel.REJECTED }
+                    }
+                    is MapCall -> {
+                        val operator = map(call.expr)
+                        IntToLongFunction { following.applyAsLong(operator.applyAsInt(it)) }
+                    }
+                    is LetCall -> {
+                        val operator = arithm(call.expr)
+                        val slots = slots
+                        val index = registers.getValue(call.name)
+                        IntToLongFunction {
+                            slots[index] = operator.applyAsInt(it)
+                            following.applyAsLong(it)
+                        }
+                    }
+                    else -> throw IllegalArgumentException("Unknown call: $call")
+                }
+            }
+            return next
+        }
+
+        /**
+         * Fused maps are trees with shared subtrees, and closures compute shared subtree for every use.
+         * If polynomial of map is shorter than tree, map is evaluated from its coefficients.
+         */
+        private fun map(expr: ArithmExpr): IntUnaryOperator {
+            val polynomial = Polynomial.of(expr)
+            if (polynomial != null && 2L * polynomial.termCount < treeOperations(expr, HashMap())) {
+                return IntUnaryOperator { polynomial.evaluate(it) }
+            }
+            return arithm(expr)
+        }
+
+        /**
+         * Count of arithmetic operations in expression, shared subtrees are counted for every use.
+         */
+        private fun treeOperations(expr: ArithmExpr, counted: MutableMap<ArithmExpr, Long>): Long =
+            if (expr !is BinArithmExpr) 0 else counted.getOrPut(expr) {
+                minOf(Int.MAX_VALUE.toLong(), 1 + treeOperations(expr.left, counted) + treeOperations(expr.right, counted))
+            }
+
+        private fun logic(expr: LogicExpr): IntPredicate = when (expr) {
+            is CmpExpr -> cmp(expr)
+            is BinLogicExpr -> IntervalSet.of(expr)?.let { intervals(it) } ?: binLogic(expr)
+        }
+
+        private fun binLogic(expr: BinLogicExpr): IntPredicate {
+            val left = logic(expr.left)
+            val right = logic(expr.right)
+            return when (expr.type) {
+                LogicType.AND -> IntPredicate { left.test(it) && right.test(it) }
+                LogicType.OR -> IntPredicate { left.test(it) || right.test(it) }
+            }
+        }
+
+        /**
+         * Single interval is checked by one unsigned comparison, several ones - by binary search.
+         */
+        private fun intervals(set: IntervalSet): IntPredicate = when (set.intervalCount) {
+            0 -> IntPredicate { false }
+            1 -> {
+                val from = set.lower(0)
+                val to = set.upper(0)
+                IntPredicate { IntervalSet.inRange(it, from, to) }
+            }
+            else -> IntPredicate { it in set }
+        }
+
+        private fun cmp(expr: CmpExpr): IntPredicate {
+            val leftExpr = expr.left
+            val rightExpr = expr.right
+            // e CMP_OP c
+            if (leftExpr is Element && rightExpr is ConstExpr) {
+                val value = constValue(rightExpr)
+                return when (expr.type) {
+                    CmpType.MORE -> IntPredicate { it > value }
+                    CmpType.LESS -> IntPredicate { it < value }
+                    CmpType.EQ -> IntPredicate { it == value }
+                }
+            }
+            // c CMP_OP e
+            if (leftExpr is ConstExpr && rightExpr is Element) {
+                val value = constValue(leftExpr)
+                return when (expr.type) {
+                    CmpType.MORE -> IntPredicate { value > it }
+                    CmpType.LESS -> IntPredicate { value < it }
+                    CmpType.EQ -> IntPredicate { value == it }
+                }
+            }
+            val left = arithm(leftExpr)
+            // expr CMP_OP c
+            if (rightExpr is ConstExpr) {
+                val value = constValue(rightExpr)
+                return when (expr.type) {
+                    CmpType.MORE -> IntPredicate { left.applyAsInt(it) > value }
+                    CmpType.LESS -> IntPredicate { left.applyAsInt(it) < value }
+                    CmpType.EQ -> IntPredicate { left.applyAsInt(it) == value }
+                }
+            }
+            val right = arithm(rightExpr)
+            return when (expr.type) {
+                CmpType.MORE -> IntPredicate { left.applyAsInt(it) > right.applyAsInt(it) }
+                CmpType.LESS -> IntPredicate { left.applyAsInt(it) < right.applyAsInt(it) }
+                CmpType.EQ -> IntPredicate { left.applyAsInt(it) == right.applyAsInt(it) }
+            }
+        }
+
+        private fun arithm(expr: ArithmExpr): IntUnaryOperator = when (expr) {
+            is Element -> IntUnaryOperator { it }
+            is ConstExpr -> {
+                val value = constValue(expr)
+                IntUnaryOperator { value }
+            }
+            is Reference -> {
+                val slots = slots
+                val index = registers[expr.name] ?: throw IllegalArgumentException("Name is not bound: ${expr.name}")
+                IntUnaryOperator { slots[index] }
+            }
+            is BinArithmExpr -> binArithm(expr)
+        }
+
+        private fun binArithm(expr: BinArithmExpr): IntUnaryOperator {
+            val leftExpr = expr.left
+            val rightExpr = expr.right
+            // e OP c
+            if (leftExpr is Element && rightExpr is ConstExpr) {
+                val value = constValue(rightExpr)
+                return when (expr.type) {
+                    ArithmType.PLUS -> IntUnaryOperator { it + value }
+                    ArithmType.MINUS -> IntUnaryOperator { it - value }
+                    ArithmType.MULT -> IntUnaryOperator { it * value }
+                }
+            }
+            // c OP e
+            if (leftExpr is ConstExpr && rightExpr is Element) {
+                val value = constValue(leftExpr)
+                return when (expr.type) {
+                    ArithmType.PLUS -> IntUnaryOperator { value + it }
+                    ArithmType.MINUS -> IntUnaryOperator { value - it }
+                    ArithmType.MULT -> IntUnaryOperator { value * it }
+                }
+            }
+            // e OP e
+            if (leftExpr is Element && rightExpr is Element) {
+                return when (expr.type) {
+                    ArithmType.PLUS -> IntUnaryOperator { it + it }
+                    ArithmType.MINUS -> IntUnaryOperator { 0 }
+                    ArithmType.MULT -> IntUnaryOperator { it * it }
+                }
+            }
+            val left = arithm(leftExpr)
+            // expr OP c
+            if (rightExpr is ConstExpr) {
+                val value = constValue(rightExpr)
+                return when (expr.type) {
+                    ArithmType.PLUS -> IntUnaryOperator { left.applyAsInt(it) + value }
+                    ArithmType.MINUS -> IntUnaryOperator { left.applyAsInt(it) - value }
+                    ArithmType.MULT -> IntUnaryOperator { left.applyAsInt(it) * value }
+                }
+            }
+            val right = arithm(rightExpr)
+            return when (expr.type) {
+                ArithmType.PLUS -> IntUnaryOperator { left.applyAsInt(it) + right.applyAsInt(it) }
+                ArithmType.MINUS -> IntUnaryOperator { left.applyAsInt(it) - right.applyAsInt(it) }
+                ArithmType.MULT -> IntUnaryOperator { left.applyAsInt(it) * right.applyAsInt(it) }
+            }
+        }
+
+        private fun constValue(expr: ConstExpr): Int = when (expr) {
+            is NumberExpr -> expr.value.toInt()
+            is MinusExpr -> -expr.number.value.toInt()
+        }
+    }
+}
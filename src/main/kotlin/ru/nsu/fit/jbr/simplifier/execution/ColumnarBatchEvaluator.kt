@@ -0,0 +1,231 @@
+package ru.nsu.fit.jbr.simplifier.execution
+
+import ru.nsu.fit.jbr.simplifier.ast.*
+import ru.nsu.fit.jbr.simplifier.transformation.IntervalSet
+import java.util.*
+
+/**
+ * Evaluates call chain column-at-a-time: AST is traversed once per block of elements,
+ * and every node is applied to the whole block in a tight loop over primitive arrays.
+ * Filters compact the block, so following calls process only passed elements.
+ */
+class ColumnarBatchEvaluator(
+    private val chain: CallChain,
+    /**
+     * Count of elements processed by one traversal of AST.
+     */
+    private val blockSize: Int = 1024
+) : BatchEvaluator {
+
+    /**
+     * Current values of active elements.
+     */
+    private var values = IntArray(blockSize)
+
+    /**
+     * Indices of active elements in input.
+     */
+    private val rows = IntArray(blockSize)
+
+    /**
+     * Count of active elements in block.
+     */
+    private var count = 0
+
+    /**
+     * Values of bound names for active elements.
+     */
+    private val bindings = HashMap<String, IntArray>()
+
+    private val freeBuffers = ArrayDeque<IntArray>()
+
+    /**
+     * Interval sets of logic operations, null for operations with other comparisons.
+     */
+    private val intervals = IdentityHashMap<BinLogicExpr, IntervalSet?>()
+
+    override fun evaluate(input: IntArray, offset: Int, length: Int, output: IntArray, selection: IntArray?): Int {
+        var passed = 0
+        var start = offset
+        val end = offset + length
+        while (start < end) {
+            val size = minOf(blockSize, end - start)
+            System.arraycopy(input, start, values, 0, size)
+            for (i in 0 until size) {
+                rows[i] = start + i
+            }
+            count = size
+
+            evaluateBlock()
+
+            System.arraycopy(values, 0, output, passed, count)
+            if (selection != null) {
+                System.arraycopy(rows, 0, selection, passed, count)
+            }
+            passed += count
+            start += size
+        }
+        return passed
+    }
+
+    private fun evaluateBlock() {
+        for (buffer in bindings.values) {
+            freeBuffers.push(buffer)
+        }
+        bindings.clear()
+
+        for (call in chain.calls) {
+            if (count == 0) return
+            when (call) {
+                is FilterCall -> filter(call.expr)
+                is MapCall -> {
+                    val mapped = acquire()
+                    arithm(call.expr, mapped)
+                    release(values)
+                    values = mapped
+                }
+                is LetCall -> {
+                    val bound = acquire()
+                    arithm(call.expr, bound)
+                    bindings.put(call.name, bound)?.let { release(it) }
+                }
+                else -> throw IllegalArgumentException("Unknown call: $call")
+            }
+        }
+    }
+
+    /**
+     * Leaves only active elements satisfying predicate.
+     */
+    private fun filter(expr: LogicExpr) {
+        val mask = acquire()
+        logic(expr, mask)
+
+        var kept = 0
+        for (i in 0 until count) {
+            if (mask[i] != 0) {
+                values[kept] = values[i]
+                rows[kept] = rows[i]
+                for (bound in bindings.values) {
+                    bound[kept] = bound[i]
+                }
+                kept++
+            }
+        }
+        count = kept
+        release(mask)
+    }
+
+    /**
+     * Writes 1 for active elements satisfying expression and 0 for others to result.
+     */
+    private fun logic(expr: LogicExpr, result: IntArray) {
+        when (expr) {
+            is CmpExpr -> {
+                val left = acquire()
+                val right = acquire()
+                arithm(expr.left, left)
+                arithm(expr.right, right)
+                when (expr.type) {
+                    CmpType.MORE -> for (i in 0 until count) result[i] = if (left[i] > right[i]) 1 else 0
+                    CmpType.LESS -> for (i in 0 until count) result[i] = if (left[i] < right[i]) 1 else 0
+                    CmpType.EQ -> for (i in 0 until count) result[i] = if (left[i] == right[i]) 1 else 0
+                }
+                release(left)
+                release(right)
+            }
+            is BinLogicExpr -> {
+                val set = if (intervals.containsKey(expr)) intervals[expr]
+                else IntervalSet.of(expr).also { intervals[expr] = it }
+                if (set != null) {
+                    intervals(set, result)
+                    return
+                }
+                val right = acquire()
+                logic(expr.left, result)
+                logic(expr.right, right)
+                when (expr.type) {
+                    LogicType.AND -> for (i in 0 until count) result[i] = result[i] and right[i]
+                    LogicType.OR -> for (i in 0 until count) result[i] = result[i] or right[i]
+                }
+                release(right)
+            }
+        }
+    }
+
+    /**
+     * Writes 1 for active elements belonging to set and 0 for others to result.
+     * Single interval is checked without branches by unsigned comparison.
+     */
+    private fun intervals(set: IntervalSet, result: IntArray) {
+        if (set.intervalCount == 1) {
+            val from = set.lower(0)
+            val to = set.upper(0)
+            for (i in 0 until count) result[i] = if (IntervalSet.inRange(values[i], from, to)) 1 else 0
+        } else {
+            for (i in 0 until count) result[i] = if (values[i] in set) 1 else 0
+        }
+    }
+
+    /**
+     * Writes values of expression for active elements to result.
+     */
+    private fun arithm(expr: ArithmExpr, result: IntArray) {
+        when (expr) {
+            is Element -> System.arraycopy(values, 0, result, 0, count)
+            is Reference -> {
+                val bound = bindings[expr.name] ?: throw IllegalArgumentException("Name is not bound: ${expr.name}")
+                System.arraycopy(bound, 0, result, 0, count)
+            }
+            is ConstExpr -> Arrays.fill(result, 0, count, constValue(expr))
+            is BinArithmExpr -> {
+                arithm(expr.left, result)
+                val right = expr.right
+                if (right is ConstExpr) {
+                    applyConst(expr.type, result, constValue(right))
+                } else {
+                    val operand = operand(right)
+                    applyArray(expr.type, result, operand)
+                    if (operand !== values) release(operand)
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns values of expression, using current values without copying for element.
+     */
+    private fun operand(expr: ArithmExpr): IntArray {
+        if (expr is Element) return values
+        val buffer = acquire()
+        arithm(expr, buffer)
+        return buffer
+    }
+
+    private fun applyConst(type: ArithmType, result: IntArray, value: Int) {
+        when (type) {
+            ArithmType.PLUS -> for (i in 0 until count) result[i] += value
+            ArithmType.MINUS -> for (i in 0 until count) result[i] -= value
+            ArithmType.MULT -> for (i in 0 until count) result[i] *= value
+        }
+    }
+
+    private fun applyArray(type: ArithmType, result: IntArray, operand: IntArray) {
+        when (type) {
+            ArithmType.PLUS -> for (i in 0 until count) result[i] += operand[i]
+            ArithmType.MINUS -> for (i in 0 until count) result[i] -= operand[i]
+            ArithmType.MULT -> for (i in 0 until count) result[i] *= operand[i]
+        }
+    }
+
+    private fun constValue(expr: ConstExpr): Int = when (expr) {
+        is NumberExpr -> expr.value.toInt()
+        is MinusExpr -> -expr.number.value.toInt()
+    }
+
+    private fun acquire(): IntArray = if (freeBuffers.isEmpty()) IntArray(blockSize) else freeBuffers.pop()
+
+    private fun release(buffer: IntArray) {
+        freeBuffers.push(buffer)
+    }
+}
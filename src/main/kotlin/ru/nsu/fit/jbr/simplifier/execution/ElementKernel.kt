@@ -0,0 +1,28 @@
+package ru.nsu.fit.jbr.simplifier.execution
+
+/**
+ * Call chain prepared for evaluation of single elements without allocations.
+ * Result of evaluation packs pass flag and value to one long, see [isPassed] and [valueOf].
+ */
+interface ElementKernel {
+
+    fun evaluate(element: Int): Long
+
+    companion object {
+        /**
+         * Result for element that didn't pass some filter.
+         */
+        const val REJECTED = 0L
+
+        /**
+         * Bit marking passed element.
+         */
+        const val PASSED = 1L shl 32
+
+        fun passed(value: Int): Long = PASSED or (value.toLong() and 0xFFFFFFFFL)
+
+        fun isPassed(result: Long): Boolean = result and PASSED != 0L
+
+        fun valueOf(result: Long): Int = result.toInt()
+    }
+}
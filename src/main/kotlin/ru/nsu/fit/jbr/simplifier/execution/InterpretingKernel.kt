@@ -0,0 +1,18 @@
+package ru.nsu.fit.jbr.simplifier.execution
+
+import ru.nsu.fit.jbr.simplifier.ast.CallChain
+import ru.nsu.fit.jbr.simplifier.generation.CallChainEvaluator
+
+/**
+ * Evaluates call chain by walking AST with [CallChainEvaluator].
+ * Slow, but always available.
+ */
+class InterpretingKernel(private val chain: CallChain) : ElementKernel {
+
+    override fun evaluate(element: Int): Long {
+        val evaluator = CallChainEvaluator(element)
+        chain.accept(evaluator)
+        val result = evaluator.result ?: return ElementKernel.REJECTED
+        return ElementKernel.passed(result)
+    }
+}
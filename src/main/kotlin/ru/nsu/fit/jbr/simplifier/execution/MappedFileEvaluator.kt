@@ -0,0 +1,135 @@
+package ru.nsu.fit.jbr.simplifier.execution
+
+import java.nio.Buffer
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption.*
+
+/**
+ * Evaluates call chain for files of little-endian 32-bit elements.
+ * Input is mapped to memory by regions of up to `regionSize` bytes and read from them by windows,
+ * so files larger than heap are processed with constant memory, and passed elements are written
+ * to output through direct buffer. Buffers are allocated once per file, nothing is allocated per element.
+ *
+ * Every region is unmapped as soon as it is read. JVM has no public API for that, so if the runtime
+ * doesn't allow it, regions stay mapped until they are garbage collected and a file takes
+ * up to size / `regionSize` mappings, which may hit the limit of mappings per process.
+ */
+class MappedFileEvaluator(
+    private val evaluator: BatchEvaluator,
+    /**
+     * Count of elements in one mapped window.
+     */
+    private val windowSize: Int = 1 shl 20,
+    /**
+     * Maximal size of one mapped region of input in bytes, at least one window is mapped.
+     */
+    regionSize: Long = REGION_BYTES
+) {
+
+    init {
+        require(windowSize > 0) { "Window size should be positive" }
+    }
+
+    // single mapping can't exceed Int.MAX_VALUE bytes
+    private val windowsPerRegion = maxOf(1L, minOf(regionSize, Int.MAX_VALUE.toLong()) / (windowSize.toLong() * Int.SIZE_BYTES))
+
+    /**
+     * Writes passed elements of input file to output file in input order.
+     *
+     * @return count of passed elements
+     */
+    fun evaluate(input: Path, output: Path): Long {
+        FileChannel.open(input, READ).use { inputChannel ->
+            FileChannel.open(output, CREATE, WRITE, TRUNCATE_EXISTING).use { outputChannel ->
+                val size = inputChannel.size()
+                require(size % Int.SIZE_BYTES == 0L) { "Size of input should be multiple of ${Int.SIZE_BYTES}" }
+                val elements = size / Int.SIZE_BYTES
+
+                val values = IntArray(windowSize)
+                val passed = IntArray(windowSize)
+                val outputBytes = ByteBuffer.allocateDirect(windowSize * Int.SIZE_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                val outputInts = outputBytes.asIntBuffer()
+                // Buffer methods are overridden with other return types since JDK 9
+                val bytes: Buffer = outputBytes
+                val ints: Buffer = outputInts
+
+                var position = 0L
+                var total = 0L
+                while (position < elements) {
+                    val regionCount = minOf(windowsPerRegion * windowSize, elements - position)
+                    val region = inputChannel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        position * Int.SIZE_BYTES,
+                        regionCount * Int.SIZE_BYTES
+                    )
+                    try {
+                        val regionInts = region.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()
+                        while (regionInts.hasRemaining()) {
+                            val count = minOf(windowSize, regionInts.remaining())
+                            regionInts.get(values, 0, count)
+
+                            val passedCount = evaluator.evaluate(values, 0, count, passed)
+
+                            ints.clear()
+                            outputInts.put(passed, 0, passedCount)
+                            bytes.clear()
+                            bytes.limit(passedCount * Int.SIZE_BYTES)
+                            while (outputBytes.hasRemaining()) {
+                                outputChannel.write(outputBytes)
+                            }
+
+                            total += passedCount
+                        }
+                    } finally {
+                        unmap(region)
+                    }
+                    position += regionCount
+                }
+                return total
+            }
+        }
+    }
+
+    companion object {
+        /**
+         * Default size of one mapped region of input in bytes.
+         */
+        const val REGION_BYTES = 1L shl 30
+
+        /**
+         * Releases mapping of the buffer, null if the runtime doesn't allow it.
+         */
+        private val unmapper: ((MappedByteBuffer) -> Unit)? = try {
+            // since JDK 9
+            val unsafeClass = Class.forName("sun.misc.Unsafe")
+            val unsafe = unsafeClass.getDeclaredField("theUnsafe").apply { isAccessible = true }.get(null)
+            val invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer::class.java)
+            ({ buffer -> invokeCleaner.invoke(unsafe, buffer) })
+        } catch (ex: ReflectiveOperationException) {
+            try {
+                // JDK 8
+                val cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner")
+                val clean = Class.forName("sun.misc.Cleaner").getMethod("clean")
+                ({ buffer -> clean.invoke(cleaner.invoke(buffer)) })
+            } catch (ex: ReflectiveOperationException) {
+                null
+            }
+        }
+
+        /**
+         * Releases mapping of the buffer, which should not be used after that,
+         * or leaves it to garbage collector.
+         */
+        private fun unmap(buffer: MappedByteBuffer) {
+            try {
+                unmapper?.invoke(buffer)
+            } catch (ex: ReflectiveOperationException) {
+                // left to garbage collector
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.nsu.fit.jbr.simplifier.execution
+
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveAction
+
+/**
+ * Evaluates large inputs on fork/join pool.
+ * Input is split to chunks, every chunk is evaluated by evaluator confined to worker thread,
+ * then passed elements of chunks are copied to output at offsets given by prefix sum of chunk counts,
+ * so output keeps input order.
+ */
+class ParallelBatchEvaluator(
+    /**
+     * Creates evaluator for every worker thread.
+     */
+    evaluatorFactory: () -> BatchEvaluator,
+    private val pool: ForkJoinPool = ForkJoinPool.commonPool(),
+    /**
+     * Count of elements evaluated by one task.
+     */
+    private val chunkSize: Int = 64 * 1024
+) : BatchEvaluator {
+
+    private val evaluators = ThreadLocal.withInitial(evaluatorFactory)
+
+    init {
+        require(chunkSize > 0) { "Chunk size should be positive" }
+    }
+
+    override fun evaluate(input: IntArray, offset: Int, length: Int, output: IntArray, selection: IntArray?): Int {
+        if (length <= chunkSize) {
+            return evaluators.get().evaluate(input, offset, length, output, selection)
+        }
+
+        val chunks = (length + chunkSize - 1) / chunkSize
+        val outputs = arrayOfNulls<IntArray>(chunks)
+        val selections = arrayOfNulls<IntArray>(chunks)
+        val counts = IntArray(chunks)
+        pool.invoke(RangeTask(0, chunks) { chunk ->
+            val start = offset + chunk * chunkSize
+            val size = minOf(chunkSize, offset + length - start)
+            val chunkOutput = IntArray(size)
+            val chunkSelection = if (selection != null) IntArray(size) else null
+            counts[chunk] = evaluators.get().evaluate(input, start, size, chunkOutput, chunkSelection)
+            outputs[chunk] = chunkOutput
+            selections[chunk] = chunkSelection
+        })
+
+        val positions = IntArray(chunks + 1)
+        for (chunk in 0 until chunks) {
+            positions[chunk + 1] = positions[chunk] + counts[chunk]
+        }
+        pool.invoke(RangeTask(0, chunks) { chunk ->
+            System.arraycopy(outputs[chunk]!!, 0, output, positions[chunk], counts[chunk])
+            if (selection != null) {
+                System.arraycopy(selections[chunk]!!, 0, selection, positions[chunk], counts[chunk])
+            }
+        })
+        return positions[chunks]
+    }
+
+    /**
+     * Runs action for every index of range, splitting range in halves while it contains more than one index.
+     */
+    private class RangeTask(private val from: Int, private val to: Int, private val action: (Int) -> Unit) :
+        RecursiveAction() {
+
+        override fun compute() {
+            if (to - from == 1) {
+                action(from)
+                return
+            }
+            val middle = (from + to) ushr 1
+            invokeAll(RangeTask(from, middle, action), RangeTask(middle, to, action))
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package ru.nsu.fit.jbr.simplifier.execution
+
+import ru.nsu.fit.jbr.simplifier.ast.*
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.ADD
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.ADD_CONST
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.INSTRUCTION_SIZE
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.JUMP_EQ
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.JUMP_GE
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.JUMP_GT
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.JUMP_LE
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.JUMP_LT
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.JUMP_NE
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.LOAD_CONST
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.MOVE
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.MUL
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.MUL_CONST
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.PASS
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.REJECT
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.SUB
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.SUB_CONST
+
+/**
+ * Encodes call chain to [RegisterProgram] in single pass over AST.
+ * Filters become conditional jumps to rejection, maps write to register of element,
+ * let calls get own registers, and temporaries are reused between calls.
+ * Shared subexpressions are not searched, chain is expected to be printed or eliminated before.
+ */
+class RegisterEncoder {
+
+    private var code = IntArray(16 * INSTRUCTION_SIZE)
+
+    private var size = 0
+
+    private val constants = mutableListOf<Int>()
+
+    private val constantIndices = HashMap<Int, Int>()
+
+    /**
+     * Registers of bound names.
+     */
+    private val registers = HashMap<String, Int>()
+
+    /**
+     * First register not used by element and let calls.
+     */
+    private var boundTop = 1
+
+    /**
+     * First free register for temporaries.
+     */
+    private var top = 1
+
+    private var registerCount = 1
+
+    fun encode(chain: CallChain): RegisterProgram {
+        size = 0
+        constants.clear()
+        constantIndices.clear()
+        registers.clear()
+        boundTop = 1
+        top = 1
+        registerCount = 1
+
+        val reject = mutableListOf<Int>()
+        for (call in chain.calls) {
+            when (call) {
+                is FilterCall -> jumpIfFalse(call.expr, reject)
+                is MapCall -> arithmInto(call.expr, 0)
+                is LetCall -> {
+                    val register = allocate()
+                    arithmInto(call.expr, register)
+                    registers[call.name] = register
+                    boundTop = register + 1
+                }
+                else -> throw IllegalArgumentException("Unknown call: $call")
+            }
+            top = boundTop
+        }
+        emit(PASS, 0, 0, 0)
+        bind(reject)
+        emit(REJECT, 0, 0, 0)
+
+        return RegisterProgram(code.copyOf(size), constants.toIntArray(), registerCount)
+    }
+
+    /**
+     * Emits jumps to target if expression is false. Positions of jumps to target are added to list.
+     */
+    private fun jumpIfFalse(expr: LogicExpr, target: MutableList<Int>) {
+        when (expr) {
+            is CmpExpr -> jump(expr, JUMP_LE, JUMP_GE, JUMP_NE, target)
+            is BinLogicExpr -> when (expr.type) {
+                LogicType.AND -> {
+                    jumpIfFalse(expr.left, target)
+                    jumpIfFalse(expr.right, target)
+                }
+                LogicType.OR -> {
+                    val passed = mutableListOf<Int>()
+                    jumpIfTrue(expr.left, passed)
+                    jumpIfFalse(expr.right, target)
+                    bind(passed)
+                }
+            }
+        }
+    }
+
+    /**
+     * Emits jumps to target if expression is true. Positions of jumps to target are added to list.
+     */
+    private fun jumpIfTrue(expr: LogicExpr, target: MutableList<Int>) {
+        when (expr) {
+            is CmpExpr -> jump(expr, JUMP_GT, JUMP_LT, JUMP_EQ, target)
+            is BinLogicExpr -> when (expr.type) {
+                LogicType.AND -> {
+                    val failed = mutableListOf<Int>()
+                    jumpIfFalse(expr.left, failed)
+                    jumpIfTrue(expr.right, target)
+                    bind(failed)
+                }
+                LogicType.OR -> {
+                    jumpIfTrue(expr.left, target)
+                    jumpIfTrue(expr.right, target)
+                }
+            }
+        }
+    }
+
+    private fun jump(expr: CmpExpr, ifMore: Int, ifLess: Int, ifEq: Int, target: MutableList<Int>) {
+        val mark = top
+        val left = arithm(expr.left)
+        val right = arithm(expr.right)
+        val opcode = when (expr.type) {
+            CmpType.MORE -> ifMore
+            CmpType.LESS -> ifLess
+            CmpType.EQ -> ifEq
+        }
+        target.add(size)
+        emit(opcode, left, right, -1)
+        top = mark
+    }
+
+    /**
+     * Sets target of jumps at given positions to current position.
+     */
+    private fun bind(jumps: List<Int>) {
+        for (jump in jumps) {
+            code[jump + 3] = size
+        }
+    }
+
+    /**
+     * Returns register containing value of expression.
+     */
+    private fun arithm(expr: ArithmExpr): Int = when (expr) {
+        is Element -> 0
+        is Reference -> registers[expr.name] ?: throw IllegalArgumentException("Name is not bound: ${expr.name}")
+        else -> {
+            val register = allocate()
+            arithmInto(expr, register)
+            register
+        }
+    }
+
+    /**
+     * Writes value of expression to given register.
+     */
+    private fun arithmInto(expr: ArithmExpr, target: Int) {
+        when (expr) {
+            is BinArithmExpr -> {
+                val mark = top
+                var left = expr.left
+                var right = expr.right
+                if (left is ConstExpr && right !is ConstExpr && expr.type != ArithmType.MINUS) {
+                    left = right.also { right = left }
+                }
+                val leftRegister = arithm(left)
+                val rightOperand = right
+                if (rightOperand is ConstExpr) {
+                    val opcode = when (expr.type) {
+                        ArithmType.PLUS -> ADD_CONST
+                        ArithmType.MINUS -> SUB_CONST
+                        ArithmType.MULT -> MUL_CONST
+                    }
+                    emit(opcode, target, leftRegister, constant(constValue(rightOperand)))
+                } else {
+                    val opcode = when (expr.type) {
+                        ArithmType.PLUS -> ADD
+                        ArithmType.MINUS -> SUB
+                        ArithmType.MULT -> MUL
+                    }
+                    emit(opcode, target, leftRegister, arithm(rightOperand))
+                }
+                top = mark
+            }
+            is ConstExpr -> emit(LOAD_CONST, target, constant(constValue(expr)), 0)
+            else -> {
+                val source = arithm(expr)
+                if (source != target) {
+                    emit(MOVE, target, source, 0)
+                }
+            }
+        }
+    }
+
+    private fun allocate(): Int {
+        val register = top++
+        registerCount = maxOf(registerCount, top)
+        return register
+    }
+
+    private fun constant(value: Int): Int = constantIndices.getOrPut(value) {
+        constants.add(value)
+        constants.size - 1
+    }
+
+    private fun constValue(expr: ConstExpr): Int = when (expr) {
+        is NumberExpr -> expr.value.toInt()
+        is MinusExpr -> -expr.number.value.toInt()
+    }
+
+    private fun emit(opcode: Int, a: Int, b: Int, c: Int) {
+        if (size + INSTRUCTION_SIZE > code.size) {
+            code = code.copyOf(code.size * 2)
+        }
+        code[size] = opcode
+        code[size + 1] = a
+        code[size + 2] = b
+        code[size + 3] = c
+        size += INSTRUCTION_SIZE
+    }
+}
@@ -0,0 +1,81 @@
+package ru.nsu.fit.jbr.simplifier.execution
+
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.ADD
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.ADD_CONST
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.INSTRUCTION_SIZE
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.JUMP_EQ
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.JUMP_GE
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.JUMP_GT
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.JUMP_LE
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.JUMP_LT
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.JUMP_NE
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.LOAD_CONST
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.MOVE
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.MUL
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.MUL_CONST
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.PASS
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.REJECT
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.SUB
+import ru.nsu.fit.jbr.simplifier.execution.RegisterProgram.Companion.SUB_CONST
+
+/**
+ * Evaluates [RegisterProgram] in single loop over its instructions.
+ * Kernel keeps its registers, so it must be used by one thread at a time;
+ * program itself is immutable and can be shared by kernels of different threads.
+ */
+class RegisterMachine(program: RegisterProgram) : ElementKernel {
+
+    private val code = program.code
+
+    private val constants = program.constants
+
+    private val registers = IntArray(program.registerCount)
+
+    override fun evaluate(element: Int): Long {
+        val code = code
+        val constants = constants
+        val r = registers
+        r[0] = element
+        var pc = 0
+        while (true) {
+            when (code[pc]) {
+                ADD -> r[code[pc + 1]] = r[code[pc + 2]] + r[code[pc + 3]]
+                SUB -> r[code[pc + 1]] = r[code[pc + 2]] - r[code[pc + 3]]
+                MUL -> r[code[pc + 1]] = r[code[pc + 2]] * r[code[pc + 3]]
+                ADD_CONST -> r[code[pc + 1]] = r[code[pc + 2]] + constants[code[pc + 3]]
+                SUB_CONST -> r[code[pc + 1]] = r[code[pc + 2]] - constants[code[pc + 3]]
+                MUL_CONST -> r[code[pc + 1]] = r[code[pc + 2]] * constants[code[pc + 3]]
+                LOAD_CONST -> r[code[pc + 1]] = constants[code[pc + 2]]
+                MOVE -> r[code[pc + 1]] = r[code[pc + 2]]
+                JUMP_LE -> if (r[code[pc + 1]] <= r[code[pc + 2]]) {
+                    pc = code[pc + 3]
+                    continue
+                }
+                JUMP_GE -> if (r[code[pc + 1]] >= r[code[pc + 2]]) {
+                    pc = code[pc + 3]
+                    continue
+                }
+                JUMP_NE -> if (r[code[pc + 1]] != r[code[pc + 2]]) {
+                    pc = code[pc + 3]
+                    continue
+                }
+                JUMP_GT -> if (r[code[pc + 1]] > r[code[pc + 2]]) {
+                    pc = code[pc + 3]
+                    continue
+                }
+                JUMP_LT -> if (r[code[pc + 1]] < r[code[pc + 2]]) {
+                    pc = code[pc + 3]
+                    continue
+                }
+                JUMP_EQ -> if (r[code[pc + 1]] == r[code[pc + 2]]) {
+                    pc = code[pc + 3]
+                    continue
+                }
+                PASS -> return ElementKernel.passed(r[0])
+                REJECT -> return ElementKernel.REJECTED
+                else -> throw IllegalStateException("Unknown opcode ${code[pc]} at $pc")
+            }
+            pc += INSTRUCTION_SIZE
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ru.nsu.fit.jbr.simplifier.execution
+
+/**
+ * Call chain encoded as flat instructions of register machine, see [RegisterEncoder] and [RegisterMachine].
+ * Every instruction takes [INSTRUCTION_SIZE] ints: opcode and three operands.
+ * Register 0 contains current element, registers of let calls and temporaries follow it.
+ */
+class RegisterProgram(
+    val code: IntArray,
+    /**
+     * Constants referenced by instructions with constant operand.
+     */
+    val constants: IntArray,
+    val registerCount: Int
+) {
+
+    companion object {
+        const val INSTRUCTION_SIZE = 4
+
+        /**
+         * r[a] = r[b] op r[c]
+         */
+        const val ADD = 0
+        const val SUB = 1
+        const val MUL = 2
+
+        /**
+         * r[a] = r[b] op constants[c]
+         */
+        const val ADD_CONST = 3
+        const val SUB_CONST = 4
+        const val MUL_CONST = 5
+
+        /**
+         * r[a] = constants[b]
+         */
+        const val LOAD_CONST = 6
+
+        /**
+         * r[a] = r[b]
+         */
+        const val MOVE = 7
+
+        /**
+         * Jump to position c of code if r[a] cmp r[b].
+         */
+        const val JUMP_LE = 8
+        const val JUMP_GE = 9
+        const val JUMP_NE = 10
+        const val JUMP_GT = 11
+        const val JUMP_LT = 12
+        const val JUMP_EQ = 13
+
+        /**
+         * Return r[0] as passed element.
+         */
+        const val PASS = 14
+
+        /**
+         * Return rejected element.
+         */
+        const val REJECT = 15
+    }
+
+    override fun toString(): String {
+        val builder = StringBuilder()
+        for (pc in code.indices step INSTRUCTION_SIZE) {
+            builder.append(pc).append(": ")
+                .append(code[pc]).append(' ')
+                .append(code[pc + 1]).append(' ')
+                .append(code[pc + 2]).append(' ')
+                .append(code[pc + 3]).append('\n')
+        }
+        return builder.append("constants: ").append(constants.joinToString()).toString()
+    }
+}
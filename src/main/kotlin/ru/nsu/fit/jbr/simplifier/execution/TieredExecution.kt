@@ -0,0 +1,233 @@
+package ru.nsu.fit.jbr.simplifier.execution
+
+import org.objectweb.asm.ClassTooLargeException
+import org.objectweb.asm.MethodTooLargeException
+import ru.nsu.fit.jbr.simplifier.ast.CallChain
+import ru.nsu.fit.jbr.simplifier.simplifyCallChain
+import ru.nsu.fit.jbr.simplifier.transformation.Canonicalizer
+import ru.nsu.fit.jbr.simplifier.transformation.Fingerprint
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executor
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Execution facade for many chains with skewed usage.
+ * Every chain starts on cheap tier, and chains which processed enough invocations or elements
+ * are simplified and compiled in background, then their kernel is swapped.
+ * Greedy optimizer is not applied, as its rules don't hold with 32-bit overflow and results must not depend on tier.
+ * If classes can't be defined at runtime, chains are promoted to closures instead of bytecode.
+ * Thread-safe.
+ */
+class TieredExecution(
+    /**
+     * Tier of chains which are not promoted yet.
+     */
+    private val initialTier: Tier = Tier.REGISTER_MACHINE,
+    /**
+     * Count of invocations after which chain is promoted.
+     */
+    private val invocationThreshold: Long = 1_000,
+    /**
+     * Count of processed elements after which chain is promoted.
+     */
+    private val elementThreshold: Long = 100_000,
+    /**
+     * Executor for compilation of promoted chains.
+     */
+    private val compilationExecutor: Executor = ForkJoinPool.commonPool()
+) {
+
+    companion object {
+        /**
+         * Single-element invocations check promotion thresholds once per this count, must be power of two.
+         */
+        private const val CHECK_INTERVAL = 64
+    }
+
+    enum class Tier {
+        INTERPRETER,
+        REGISTER_MACHINE,
+        CLOSURE,
+        COMPILED
+    }
+
+    /**
+     * Chains by fingerprints of their canonical forms, so equivalent chains share execution.
+     */
+    private val chains = ConcurrentHashMap<Fingerprint, TieredChain>()
+
+    private val promotions = AtomicLong()
+
+    private val failedPromotions = AtomicLong()
+
+    init {
+        require(initialTier == Tier.INTERPRETER || initialTier == Tier.REGISTER_MACHINE) {
+            "Initial tier should be cheap"
+        }
+    }
+
+    /**
+     * Returns execution of chain, the same for chains with equal canonical forms.
+     */
+    fun chain(chain: CallChain): TieredChain {
+        val canonicalizer = Canonicalizer()
+        return chains.computeIfAbsent(canonicalizer.fingerprint(chain)) { TieredChain(canonicalizer.canonicalize(chain)) }
+    }
+
+    /**
+     * Count of chains running on every tier.
+     */
+    fun tierCounts(): Map<Tier, Int> {
+        val counts = EnumMap<Tier, Int>(Tier::class.java)
+        for (tier in Tier.values()) {
+            counts[tier] = 0
+        }
+        for (chain in chains.values) {
+            counts[chain.tier] = counts.getValue(chain.tier) + 1
+        }
+        return counts
+    }
+
+    /**
+     * Count of chains swapped to compiled kernel or closures.
+     */
+    val promotionCount: Long
+        get() = promotions.get()
+
+    /**
+     * Count of chains which failed to compile and stay on initial tier.
+     */
+    val failedPromotionCount: Long
+        get() = failedPromotions.get()
+
+    /**
+     * Kernel of some tier. Kernels which are not thread-safe are created per thread.
+     */
+    private class Stage(val tier: Tier, threadSafe: Boolean, kernelFactory: () -> ElementKernel) {
+        private val shared = if (threadSafe) kernelFactory() else null
+
+        private val local = if (threadSafe) null else ThreadLocal.withInitial(kernelFactory)
+
+        fun kernel(): ElementKernel = shared ?: local!!.get()
+    }
+
+    private fun initialStage(chain: CallChain): Stage = when (initialTier) {
+        Tier.INTERPRETER -> Stage(Tier.INTERPRETER, true) { InterpretingKernel(chain) }
+        else -> {
+            val program = RegisterEncoder().encode(chain)
+            Stage(Tier.REGISTER_MACHINE, false) { RegisterMachine(program) }
+        }
+    }
+
+    private fun compiledStage(chain: CallChain): Stage {
+        val simplified = simplifyCallChain(chain)
+        val kernel = try {
+            BytecodeCompiler().compile(simplified)
+        } catch (ex: LinkageError) {
+            null
+        } catch (ex: SecurityException) {
+            null
+        } catch (ex: UnsupportedOperationException) {
+            null
+        } catch (ex: ReflectiveOperationException) {
+            null
+        } catch (ex: MethodTooLargeException) {
+            // huge chains are still evaluated by closures
+            null
+        } catch (ex: ClassTooLargeException) {
+            null
+        }
+        if (kernel == null) {
+            val compiler = ClosureCompiler()
+            return Stage(Tier.CLOSURE, false) { compiler.compile(simplified) }
+        }
+        return Stage(Tier.COMPILED, true) { kernel }
+    }
+
+    /**
+     * Execution of canonical form of chain with its counters.
+     */
+    inner class TieredChain internal constructor(val chain: CallChain) {
+
+        @Volatile
+        private var stage = initialStage(chain)
+
+        private val promotionRequested = AtomicBoolean()
+
+        private val invocationCounter = LongAdder()
+
+        private val elementCounter = LongAdder()
+
+        /**
+         * Count of single-element invocations, updated without synchronization:
+         * lost updates only shift the next threshold check.
+         */
+        private var singleInvocations = 0
+
+        /**
+         * Tier of current kernel.
+         */
+        val tier: Tier
+            get() = stage.tier
+
+        val invocations: Long
+            get() = invocationCounter.sum()
+
+        val elements: Long
+            get() = elementCounter.sum()
+
+        /**
+         * Evaluates chain for single element, see [ElementKernel].
+         */
+        fun evaluate(element: Int): Long {
+            val result = stage.kernel().evaluate(element)
+            count(1)
+            return result
+        }
+
+        /**
+         * Evaluates chain for array of elements, see [BatchEvaluator].
+         */
+        fun evaluate(input: IntArray, offset: Int, length: Int, output: IntArray, selection: IntArray? = null): Int {
+            val passed = ScalarBatchEvaluator(stage.kernel()).evaluate(input, offset, length, output, selection)
+            count(length)
+            return passed
+        }
+
+        private fun count(elements: Int) {
+            invocationCounter.increment()
+            elementCounter.add(elements.toLong())
+            if (promotionRequested.get()) return
+            // sums walk all counter cells, so they are not computed for every element
+            if (elements == 1 && singleInvocations++ and (CHECK_INTERVAL - 1) != 0) return
+            if ((invocationCounter.sum() >= invocationThreshold || elementCounter.sum() >= elementThreshold)
+                && promotionRequested.compareAndSet(false, true)
+            ) {
+                compilationExecutor.execute { promote() }
+            }
+        }
+
+        private fun promote() {
+            val compiled = try {
+                compiledStage(chain)
+            } catch (ex: Exception) {
+                null
+            } catch (ex: LinkageError) {
+                null
+            } catch (ex: StackOverflowError) {
+                // too deep chain stays on initial tier
+                null
+            }
+            if (compiled == null) {
+                failedPromotions.incrementAndGet()
+                return
+            }
+            stage = compiled
+            promotions.incrementAndGet()
+        }
+    }
+}
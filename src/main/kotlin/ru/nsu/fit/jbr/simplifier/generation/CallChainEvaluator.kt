@@ -17,6 +17,11 @@ class CallChainEvaluator(
 
     private var lastCallResult: Int = initialElement
 
+    /**
+     * Values bound by let calls for current element.
+     */
+    private val bindings = HashMap<String, Int>()
+
     /**
      * Contains result of evaluating specific call chain.
      * Null means that element didn't passed some filter.
@@ -26,6 +31,7 @@ class CallChainEvaluator(
     override fun visit(node: CallChain): Int {
         result = initialElement
         lastCallResult = initialElement
+        bindings.clear()
         for (call in node.calls) {
             val callResult = call.accept(this)
             if (result == null) return 0
@@ -50,6 +56,9 @@ class CallChainEvaluator(
         if (left == 0 && node.type == LogicType.AND) {
             return 0
         }
+        if (left != 0 && node.type == LogicType.OR) {
+            return 1
+        }
         return node.right.accept(this)
     }
 
@@ -68,6 +77,12 @@ class CallChainEvaluator(
         return node.expr.accept(this)
     }
 
+    override fun visit(node: LetCall): Int {
+        val value = node.expr.accept(this)
+        bindings[node.name] = value
+        return value
+    }
+
     override fun visit(node: BinArithmExpr): Int {
         val left = node.left.accept(this)
         val right = node.right.accept(this)
@@ -82,6 +97,10 @@ class CallChainEvaluator(
         return lastCallResult
     }
 
+    override fun visit(node: Reference): Int {
+        return bindings[node.name] ?: throw IllegalStateException("Name is not bound: ${node.name}")
+    }
+
     override fun visit(node: MinusExpr): Int {
         return -node.number.accept(this)
     }
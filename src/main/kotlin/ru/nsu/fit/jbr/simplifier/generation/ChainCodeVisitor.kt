@@ -52,6 +52,14 @@ class ChainCodeVisitor: UnitVisitor {
         stringBuilder.append("}")
     }
 
+    override fun visit(node: LetCall) {
+        stringBuilder.append("let{")
+        stringBuilder.append(node.name)
+        stringBuilder.append(":=")
+        node.expr.accept(this)
+        stringBuilder.append("}")
+    }
+
     override fun visit(node: BinArithmExpr) {
         stringBuilder.append("(")
         node.left.accept(this)
@@ -64,6 +72,10 @@ class ChainCodeVisitor: UnitVisitor {
         stringBuilder.append("element")
     }
 
+    override fun visit(node: Reference) {
+        stringBuilder.append(node.name)
+    }
+
     override fun visit(node: MinusExpr) {
         stringBuilder.append("-")
         node.number.accept(this)
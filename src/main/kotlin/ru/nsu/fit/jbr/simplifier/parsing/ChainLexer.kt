@@ -0,0 +1,148 @@
+package ru.nsu.fit.jbr.simplifier.parsing
+
+import org.antlr.v4.runtime.misc.ParseCancellationException
+
+/**
+ * Splits call chain source to tokens of CallChain.g4 grammar.
+ * Tokens are not allocated: kind of current token is returned by [next],
+ * its bounds are kept in [tokenStart] and [tokenEnd].
+ */
+class ChainLexer {
+
+    companion object {
+        const val EOF = 0
+        const val NUMBER = 1
+        const val ELEMENT = 2
+        const val NAME = 3
+        /**
+         * One of '+', '*', '>', '<', '=', '&', '|'.
+         */
+        const val OPERATION = 4
+        const val MINUS = 5
+        const val LEFT_PAREN = 6
+        const val RIGHT_PAREN = 7
+        const val RIGHT_BRACE = 8
+        const val MAP = 9
+        const val FILTER = 10
+        const val LET = 11
+        const val PIPE = 12
+        const val ASSIGN = 13
+    }
+
+    private var source: CharSequence = ""
+
+    private var position = 0
+
+    var tokenStart = 0
+        private set
+
+    var tokenEnd = 0
+        private set
+
+    /**
+     * Position of source in the whole text, added to positions in error messages.
+     */
+    var offset = 0
+        private set
+
+    fun reset(source: CharSequence, offset: Int = 0) {
+        this.source = source
+        this.offset = offset
+        position = 0
+        tokenStart = 0
+        tokenEnd = 0
+    }
+
+    /**
+     * Reads next token. Like ANTLR lexer, chooses the longest token, and keyword on tie with name.
+     */
+    fun next(): Int {
+        tokenStart = position
+        if (position == source.length) {
+            tokenEnd = position
+            return EOF
+        }
+        val c = source[position]
+        val kind = when {
+            c in '0'..'9' -> {
+                position = skip(position + 1) { it in '0'..'9' }
+                NUMBER
+            }
+            c in 'a'..'z' || c == '_' -> {
+                position = skip(position + 1) { it in 'a'..'z' || it in '0'..'9' || it == '_' }
+                word()
+            }
+            c == '+' || c == '*' || c == '>' || c == '<' || c == '=' || c == '&' || c == '|' -> {
+                position++
+                OPERATION
+            }
+            c == '-' -> single(MINUS)
+            c == '(' -> single(LEFT_PAREN)
+            c == ')' -> single(RIGHT_PAREN)
+            c == '}' -> single(RIGHT_BRACE)
+            c == '%' && matches("%>%") -> literal(PIPE, 3)
+            c == ':' && matches(":=") -> literal(ASSIGN, 2)
+            else -> throw ParseCancellationException("token recognition error at: '$c' at ${offset + position}")
+        }
+        tokenEnd = position
+        return kind
+    }
+
+    /**
+     * Returns text of current token.
+     */
+    fun text(): String = source.subSequence(tokenStart, tokenEnd).toString()
+
+    /**
+     * Returns first character of current token.
+     */
+    fun firstChar(): Char = source[tokenStart]
+
+    /**
+     * Classifies word from tokenStart to position, which may be keyword with '{' or element.
+     */
+    private fun word(): Int {
+        val length = position - tokenStart
+        val braced = position < source.length && source[position] == '{'
+        return when {
+            braced && length == 3 && startsWith("map") -> literal(MAP, 1)
+            braced && length == 6 && startsWith("filter") -> literal(FILTER, 1)
+            braced && length == 3 && startsWith("let") -> literal(LET, 1)
+            length == 7 && startsWith("element") -> ELEMENT
+            else -> NAME
+        }
+    }
+
+    private inline fun skip(from: Int, predicate: (Char) -> Boolean): Int {
+        var end = from
+        while (end < source.length && predicate(source[end])) {
+            end++
+        }
+        return end
+    }
+
+    private fun single(kind: Int): Int {
+        position++
+        return kind
+    }
+
+    private fun literal(kind: Int, length: Int): Int {
+        position += length
+        return kind
+    }
+
+    private fun matches(text: String): Boolean {
+        if (position + text.length > source.length) return false
+        for (i in text.indices) {
+            if (source[position + i] != text[i]) return false
+        }
+        return true
+    }
+
+    private fun startsWith(text: String): Boolean {
+        for (i in text.indices) {
+            if (source[tokenStart + i] != text[i]) return false
+        }
+        return true
+    }
+}
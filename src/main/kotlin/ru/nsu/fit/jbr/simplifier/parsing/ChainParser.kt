@@ -0,0 +1,223 @@
+package ru.nsu.fit.jbr.simplifier.parsing
+
+import org.antlr.v4.runtime.misc.ParseCancellationException
+import ru.nsu.fit.jbr.simplifier.ast.*
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.ASSIGN
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.ELEMENT
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.EOF
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.FILTER
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.LEFT_PAREN
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.LET
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.MAP
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.MINUS
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.NAME
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.NUMBER
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.OPERATION
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.PIPE
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.RIGHT_BRACE
+import ru.nsu.fit.jbr.simplifier.parsing.ChainLexer.Companion.RIGHT_PAREN
+import java.util.concurrent.CancellationException
+
+/**
+ * Recursive-descent parser of CallChain.g4 grammar building AST directly from source.
+ * Errors are reported like ANTLR parser with AstCreator: syntax errors throw ParseCancellationException,
+ * and type errors (IncorrectTypeCancellationException) and undefined names (ParseCancellationException)
+ * are thrown only if whole source is syntactically correct, the first one in order of AstCreator.
+ * Not thread-safe, but can be reused for many sources.
+ */
+class ChainParser {
+
+    companion object {
+        /**
+         * Placeholder for logic expression with type error.
+         */
+        private val invalidLogic = CmpExpr(Element, CmpType.EQ, Element)
+    }
+
+    private val lexer = ChainLexer()
+
+    /**
+     * Kind of current token.
+     */
+    private var token = EOF
+
+    /**
+     * Names bound by already parsed let calls.
+     */
+    private val names = HashSet<String>()
+
+    /**
+     * First error found after syntax check.
+     */
+    private var semanticError: CancellationException? = null
+
+    fun parse(source: CharSequence): CallChain {
+        begin()
+        lexer.reset(source)
+        advance()
+
+        val calls = mutableListOf(call())
+        while (token == PIPE) {
+            advance()
+            calls.add(call())
+        }
+        expect(EOF)
+
+        end()
+        return CallChain(calls)
+    }
+
+    /**
+     * Starts parsing of chain given call by call with [parseCall].
+     */
+    fun begin() {
+        names.clear()
+        semanticError = null
+    }
+
+    /**
+     * Parses single call of chain, names bound by let calls are kept until next [begin].
+     * Semantic errors are not thrown until [end], like in [parse].
+     * Offset is position of call in the whole chain, syntax errors report positions in the chain.
+     */
+    fun parseCall(source: CharSequence, offset: Int = 0): Call {
+        lexer.reset(source, offset)
+        advance()
+        val call = call()
+        expect(EOF)
+        return call
+    }
+
+    /**
+     * Finishes parsing of chain given call by call, throws first semantic error.
+     */
+    fun end() {
+        semanticError?.let { throw it }
+    }
+
+    private fun call(): Call = when (token) {
+        MAP -> {
+            advance()
+            val expr = expr()
+            expect(RIGHT_BRACE)
+            MapCall(arithm(expr, "Incorrect type for map expression"))
+        }
+        FILTER -> {
+            advance()
+            val expr = expr()
+            expect(RIGHT_BRACE)
+            if (expr !is LogicExpr) {
+                typeError("Incorrect type for filter expression")
+            }
+            FilterCall(expr as? LogicExpr ?: invalidLogic)
+        }
+        LET -> {
+            advance()
+            val name = lexer.text()
+            expect(NAME)
+            expect(ASSIGN)
+            val expr = expr()
+            expect(RIGHT_BRACE)
+            val call = LetCall(name, arithm(expr, "Incorrect type for let expression"))
+            names.add(name)
+            call
+        }
+        else -> throw syntaxError("map{, filter{ or let{")
+    }
+
+    private fun expr(): AstNode = when (token) {
+        ELEMENT -> {
+            advance()
+            Element
+        }
+        NAME -> {
+            val name = lexer.text()
+            advance()
+            if (name !in names) {
+                semanticError(ParseCancellationException("Name is not defined: $name"))
+            }
+            Reference(name)
+        }
+        NUMBER -> NumberExpr(number())
+        MINUS -> {
+            advance()
+            MinusExpr(NumberExpr(number()))
+        }
+        LEFT_PAREN -> binExpr()
+        else -> throw syntaxError("expression")
+    }
+
+    private fun binExpr(): AstNode {
+        advance()
+        val left = expr()
+        if (token != OPERATION && token != MINUS) throw syntaxError("operation")
+        val op = lexer.firstChar()
+        advance()
+        val right = expr()
+        expect(RIGHT_PAREN)
+
+        return when (op) {
+            '+' -> arithmExpr(left, ArithmType.PLUS, right)
+            '-' -> arithmExpr(left, ArithmType.MINUS, right)
+            '*' -> arithmExpr(left, ArithmType.MULT, right)
+            '>' -> cmpExpr(left, CmpType.MORE, right)
+            '<' -> cmpExpr(left, CmpType.LESS, right)
+            '=' -> cmpExpr(left, CmpType.EQ, right)
+            '&' -> logicExpr(left, LogicType.AND, right)
+            else -> logicExpr(left, LogicType.OR, right)
+        }
+    }
+
+    private fun arithmExpr(left: AstNode, type: ArithmType, right: AstNode): BinArithmExpr {
+        val message = "Incorrect type for arithmetic binary expression child"
+        return BinArithmExpr(arithm(left, message), type, arithm(right, message))
+    }
+
+    private fun cmpExpr(left: AstNode, type: CmpType, right: AstNode): CmpExpr {
+        val message = "Incorrect type for compare expression child"
+        return CmpExpr(arithm(left, message), type, arithm(right, message))
+    }
+
+    private fun logicExpr(left: AstNode, type: LogicType, right: AstNode): LogicExpr {
+        if (left !is LogicExpr || right !is LogicExpr) {
+            typeError("Incorrect type for logic binary expression child")
+            return invalidLogic
+        }
+        return BinLogicExpr(left, type, right)
+    }
+
+    private fun number(): String {
+        val text = lexer.text()
+        expect(NUMBER)
+        return text
+    }
+
+    /**
+     * Returns expression if it is arithmetic, otherwise reports type error and returns placeholder.
+     */
+    private fun arithm(expr: AstNode, message: String): ArithmExpr {
+        if (expr is ArithmExpr) return expr
+        typeError(message)
+        return Element
+    }
+
+    private fun advance() {
+        token = lexer.next()
+    }
+
+    private fun expect(kind: Int) {
+        if (token != kind) throw syntaxError("token $kind")
+        advance()
+    }
+
+    private fun syntaxError(expected: String) =
+        ParseCancellationException("Unexpected token at ${lexer.offset + lexer.tokenStart}, expected $expected")
+
+    private fun typeError(message: String) = semanticError(IncorrectTypeCancellationException(message))
+
+    private fun semanticError(error: CancellationException) {
+        if (semanticError == null) {
+            semanticError = error
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ru.nsu.fit.jbr.simplifier.parsing
+
+import ru.nsu.fit.jbr.simplifier.ast.AstFactory
+import ru.nsu.fit.jbr.simplifier.ast.CallChain
+import ru.nsu.fit.jbr.simplifier.transformation.ChainFuser
+import java.io.Reader
+import java.nio.channels.Channels
+import java.nio.channels.ReadableByteChannel
+import java.nio.charset.StandardCharsets
+
+/**
+ * Parses call chain from reader call by call and fuses every call as soon as it is read,
+ * so neither whole source nor its AST is kept: memory is bounded by fused chain and the longest call.
+ * Result and errors are the same as for [ChainParser] followed by [ru.nsu.fit.jbr.simplifier.simplifyCallChain],
+ * except that line breaks are skipped, so generated sources can be wrapped and end with line break.
+ * Positions in syntax errors don't count skipped line breaks.
+ * Not thread-safe, but can be reused for many sources.
+ */
+class StreamingChainParser(private val bufferSize: Int = 64 * 1024) {
+
+    companion object {
+        private const val PIPE = "%>%"
+    }
+
+    init {
+        require(bufferSize > 0) { "Buffer size should be positive" }
+    }
+
+    private val parser = ChainParser()
+
+    /**
+     * Text of call being read.
+     */
+    private val call = StringBuilder()
+
+    /**
+     * Position of call being read in source without line breaks.
+     */
+    private var callStart = 0
+
+    /**
+     * Count of parsed calls of last source.
+     */
+    var callCount = 0
+        private set
+
+    /**
+     * Reads chain in UTF-8 from channel, channel is not closed.
+     */
+    fun fuse(channel: ReadableByteChannel): CallChain =
+        fuse(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), bufferSize))
+
+    /**
+     * Reads chain from reader, reader is not closed.
+     */
+    fun fuse(reader: Reader): CallChain {
+        val factory = AstFactory()
+        val fuser = ChainFuser(factory)
+        parser.begin()
+        call.setLength(0)
+        callStart = 0
+        callCount = 0
+
+        val buffer = CharArray(bufferSize)
+        while (true) {
+            val count = reader.read(buffer)
+            if (count < 0) break
+            for (i in 0 until count) {
+                val c = buffer[i]
+                if (c == '\n' || c == '\r') continue
+                call.append(c)
+                if (c == '%' && endsWithPipe()) {
+                    call.setLength(call.length - PIPE.length)
+                    fuseCall(fuser)
+                }
+            }
+        }
+        fuseCall(fuser)
+        parser.end()
+        return fuser.summary().toCallChain(factory)
+    }
+
+    private fun fuseCall(fuser: ChainFuser) {
+        parser.parseCall(call, callStart).accept(fuser)
+        callCount++
+        callStart += call.length + PIPE.length
+        call.setLength(0)
+    }
+
+    private fun endsWithPipe(): Boolean {
+        if (call.length < PIPE.length) return false
+        for (i in PIPE.indices) {
+            if (call[call.length - PIPE.length + i] != PIPE[i]) return false
+        }
+        return true
+    }
+}
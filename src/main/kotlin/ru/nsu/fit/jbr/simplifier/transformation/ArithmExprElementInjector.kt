@@ -1,23 +1,62 @@
 package ru.nsu.fit.jbr.simplifier.transformation
 
 import ru.nsu.fit.jbr.simplifier.ast.*
+import java.util.*
 
 /**
- * Replaces all 'element' entries in AST to specific arithmetic expression.
+ * Replaces all 'element' entries in AST to specific arithmetic expression
+ * and references to bound names to their expressions.
+ * Injected expressions are shared, not copied, and every distinct node is processed once,
+ * so result size is proportional to the size of processed DAG.
  */
 class ArithmExprElementInjector(
     /**
      * Arithmetic expression to be injected.
      */
-    private val injected: ArithmExpr
+    private val injected: ArithmExpr,
+    /**
+     * Factory used to build hash-consed result nodes.
+     */
+    private val factory: AstFactory = AstFactory(),
+    /**
+     * Expressions to be injected instead of references to names.
+     */
+    private val bindings: Map<String, ArithmExpr> = emptyMap()
 ): CopyVisitor {
 
-    override fun visit(node: BinArithmExpr): AstNode {
-        return BinArithmExpr(injectArithm(node.left), node.type, injectArithm(node.right))
+    private val injectedNodes = IdentityHashMap<AstNode, AstNode>()
+
+    private fun <T : AstNode> memoized(node: T, inject: () -> T): T {
+        @Suppress("UNCHECKED_CAST")
+        return injectedNodes.getOrPut(node) { inject() } as T
+    }
+
+    override fun visit(node: BinLogicExpr): AstNode = memoized(node) {
+        factory.binLogic(node.left.accept(this) as LogicExpr, node.type, node.right.accept(this) as LogicExpr)
+    }
+
+    override fun visit(node: CmpExpr): AstNode = memoized(node) {
+        factory.cmp(injectArithm(node.left), node.type, injectArithm(node.right))
+    }
+
+    override fun visit(node: BinArithmExpr): AstNode = memoized(node) {
+        factory.binArithm(injectArithm(node.left), node.type, injectArithm(node.right))
     }
 
     override fun visit(node: Element): ArithmExpr {
-        return injectArithm(node)
+        return injected
+    }
+
+    override fun visit(node: Reference): ArithmExpr {
+        return bindings[node.name] ?: factory.intern(node)
+    }
+
+    override fun visit(node: MinusExpr): ArithmExpr {
+        return factory.minus(node.number)
+    }
+
+    override fun visit(node: NumberExpr): NumberExpr {
+        return factory.intern(node)
     }
 
     override fun visit(node: MapCall): Call {
@@ -25,10 +64,6 @@ class ArithmExprElementInjector(
     }
 
     private fun injectArithm(expr: ArithmExpr): ArithmExpr {
-        return if (expr is Element) {
-            injected.clone()
-        } else {
-            expr.accept(this) as ArithmExpr
-        }
+        return expr.accept(this) as ArithmExpr
     }
-}
\ No newline at end of file
+}
@@ -16,7 +16,12 @@ import kotlin.math.sqrt
  * Comments can contain OP - arithmetic operation, LOG_OP - logic operation, or CMP_OP - compare operation.
  * -> means expression transformation, e means element, c or const means numerical constant.
  */
-class CallOptimizer : CopyVisitor {
+class CallOptimizer(
+    /**
+     * If true, results of previous [optimize] calls are reused, as [FixpointOptimizer] does between passes.
+     */
+    private val retainMemo: Boolean = false
+) : CopyVisitor, ChainOptimizer {
 
     companion object {
         /**
@@ -36,6 +41,42 @@ class CallOptimizer : CopyVisitor {
      */
     private val constEvaluator = CallChainEvaluator(0)
 
+    /**
+     * Interns optimized chains and results of optimization,
+     * so equal subtrees are the same instance and are compared by reference.
+     */
+    private var factory = AstFactory()
+
+    /**
+     * Results of optimization by node. Equal subtrees share one entry, node optimized to itself is stable.
+     */
+    private val memo = HashMap<AstNode, AstNode>()
+
+    /**
+     * Count of nodes optimized since creation, nodes found in memo are not counted.
+     */
+    var visitedCount = 0L
+        private set
+
+    /**
+     * Count of nodes found in memo since creation.
+     */
+    var memoHits = 0L
+        private set
+
+    override fun optimize(chain: CallChain): CallChain {
+        if (!retainMemo) {
+            memo.clear()
+            factory = AstFactory()
+        }
+        return visit(canonical(chain))
+    }
+
+    /**
+     * Chain with equal subtrees replaced by single instances, which are known to this optimizer.
+     */
+    fun canonical(chain: CallChain): CallChain = factory.canonical(chain)
+
     /**
      * Replaces chain with default 'filtering all' expression if first filter is always false.
      */
@@ -61,151 +102,71 @@ class CallOptimizer : CopyVisitor {
      */
     private fun filteringAll() = CallChain(mutableListOf(FilterCall(falseCmp()), MapCall(Element)))
 
-    override fun visit(node: BinLogicExpr): LogicExpr {
-        node.left = node.left.accept(this) as LogicExpr
-        node.right = node.right.accept(this) as LogicExpr
-
-        val left = node.left
-        val right = node.right
-        val type = node.type
-        return if (left is CmpExpr && right is CmpExpr) {
-            simplifyCmp(left, type, right) ?: node
-        } else {
-            node
-        }
-    }
-
     /**
-     * Tries to simplify compare expressions.
+     * Operands of AND/OR chain which compare element with constants are merged to single [IntervalSet]
+     * and replaced by its minimal expression: (e > 3) & ((t > 1) & (e < 10)) -> ((e > 3) & (e < 10)) & (t > 1).
      */
-    private fun simplifyCmp(left: CmpExpr, type: LogicType, right: CmpExpr): LogicExpr? {
-        return processAsymptCmp(left, type, right)
-            ?: processSimpleCmp(left, type, right)
-    }
+    override fun visit(node: BinLogicExpr): LogicExpr = tracked(node) { optimizeLogic(it) }
 
-    /**
-     * Checks for constant compare operations and simplifies it.
-     */
-    private fun processAsymptCmp(left: CmpExpr, type: LogicType, right: CmpExpr): LogicExpr? {
-        val falseCmp = falseCmp()
-        val trueCmp = trueCmp()
-        return when {
-            left.isAlwaysFalse() && type == OR ||
-                    left.isAlwaysTrue() && type == AND -> right
-
-            right.isAlwaysFalse() && type == OR ||
-                    right.isAlwaysTrue() && type == AND -> left
-
-            (left.isAlwaysFalse() || right.isAlwaysFalse()) && type == AND -> falseCmp
-
-            (left.isAlwaysTrue() || right.isAlwaysTrue()) && type == OR -> trueCmp
-            else -> {
-                null
-            }
-        }
-    }
+    private fun optimizeLogic(node: BinLogicExpr): LogicExpr {
+        val left = node.left.accept(this) as LogicExpr
+        val right = node.right.accept(this) as LogicExpr
+        val type = node.type
+        val visited = BinLogicExpr(left, type, right)
 
-    /**
-     * Processes compare operations without inner arithmetic operations.
-     */
-    private fun processSimpleCmp(left: CmpExpr, type: LogicType, right: CmpExpr): LogicExpr? {
-        if (left.left is BinArithmExpr
-            || left.right is BinArithmExpr
-            || right.left is BinArithmExpr
-            || right.right is BinArithmExpr
-        ) return null else {
-            val stdLeft = getStandardElConst(left) ?: return null
-            val stdRight = getStandardElConst(right) ?: return null
-            val leftVal = stdLeft.right.accept(constEvaluator)
-            val rightVal = stdRight.right.accept(constEvaluator)
-            return processElConstElConstCmps(leftVal, stdLeft.type, type, rightVal, stdRight.type)
-                ?: processElConstElConstCmps(rightVal, stdRight.type, type, leftVal, stdLeft.type)
-        }
+        return mergeIntervals(visited) ?: visited
     }
 
     /**
-     * Tries to simplify (e leftType leftVal) type (e rightType rightVal).
-     * Only for leftVal >= rightVal, for leftVal < rightVal use with left = right and right = left.
-     */
-    private fun processElConstElConstCmps(
-        leftVal: Int,
-        leftType: CmpType,
-        type: LogicType,
-        rightVal: Int,
-        rightType: CmpType
-    ): LogicExpr? {
-        val falseCmp = falseCmp()
-        val leftNum = NumberExpr(leftVal.toString())
-        val rightNum = NumberExpr(rightVal.toString())
-        return when {
-            leftVal == rightVal -> {
-
-                if (leftType != rightType) when (type) {
-                    // (e CMP_OP1 c) && (e CMP_OP2 c) -> false
-                    AND -> falseCmp
-                    // (e CMP_OP1 c) || (e CMP_OP2 c) -> not optimized
-                    OR -> null
-                }
-                // (e CMP_OP c) LOG_OP (e CMP_OP c) -> (e CMP_OP c)
-                else CmpExpr(Element, leftType, leftNum)
-            }
-            leftVal > rightVal -> {
-                when (leftType) {
-                    LESS -> when (rightType) {
-                        LESS -> when (type) {
-                            // (e < C) & (e < c) -> (e < c)
-                            AND -> CmpExpr(Element, rightType, rightNum)
-                            // (e < C) | (e < c) -> (e < C)
-                            OR -> CmpExpr(Element, leftType, leftNum)
-                        }
-                        EQ -> when (type) {
-                            // (e < C) & (e = c) -> (e = c)
-                            AND -> CmpExpr(Element, rightType, rightNum)
-                            // (e < C) | (e = c) -> not optimized
-                            OR -> null
-                        }
-                        // (e < C) LOG_OP (e > c) -> not optimized
-                        MORE -> null
-                    }
-                    EQ -> when (rightType) {
-                        LESS, EQ -> when (type) {
-                            // (e = C) & (e <= c) -> false
-                            AND -> falseCmp
-                            // (e = C) | (e <= c) -> not optimized
-                            OR -> null
-                        }
-                        // (e = C) LOG_OP (e > c) -> not optimized
-                        MORE -> null
-                    }
-                    MORE -> when (rightType) {
-                        // (e > C): for (e < c) and (e = c) - same as in cae of (e = C)
-                        LESS, EQ -> when (type) {
-                            AND -> falseCmp
-                            OR -> null
-                        }
-                        MORE -> when (type) {
-                            // (e > C) && (e > c) -> (e > C)
-                            AND -> CmpExpr(Element, leftType, leftNum)
-                            // (e > C) || (e > c) -> (e > c)
-                            OR -> CmpExpr(Element, rightType, rightNum)
-                        }
-                    }
+     * Merges interval operands of logic chain, returns null if nothing was simplified.
+     */
+    private fun mergeIntervals(node: BinLogicExpr): LogicExpr? {
+        val type = node.type
+        val operands = mutableListOf<LogicExpr>()
+        flatten(node, type, operands)
+
+        var merged: IntervalSet? = null
+        var mergedOperands = 0
+        var mergedCount = 0
+        val others = mutableListOf<LogicExpr>()
+        for (operand in operands) {
+            val set = IntervalSet.of(operand)
+            if (set == null) {
+                others.add(operand)
+            } else {
+                merged = when {
+                    merged == null -> set
+                    type == AND -> merged.intersect(set)
+                    else -> merged.union(set)
                 }
-            }
-            else -> {
-                null
+                mergedOperands++
+                mergedCount += IntervalSet.cmpCount(operand)
             }
         }
+        if (merged == null) return null
+
+        // (false & expr) -> false, (true | expr) -> true
+        if (type == AND && merged.isEmpty()) return falseCmp()
+        if (type == OR && merged.isAll()) return trueCmp()
+        // (true & expr) -> expr, (false | expr) -> expr
+        val neutral = type == AND && merged.isAll() || type == OR && merged.isEmpty()
+        if (neutral && others.isNotEmpty()) return others.reduce { acc, expr -> BinLogicExpr(acc, type, expr) }
+        if (mergedOperands == 1 && others.isNotEmpty()) return null
+
+        val mergedExpr = merged.toLogicExpr() ?: return null
+        if (IntervalSet.cmpCount(mergedExpr) > mergedCount) return null
+        return (listOf(mergedExpr) + others).reduce { acc, expr -> BinLogicExpr(acc, type, expr) }
     }
 
     /**
-     * Standardizes compare expression with element and const to (e CMP_OP c)
+     * Collects operands of nested logic operations of the same type.
      */
-    private fun getStandardElConst(node: CmpExpr): CmpExpr? {
-        return when {
-            node.left is Element && node.right is ConstExpr -> node
-            node.left is ConstExpr && node.right is Element -> CmpExpr(node.right, node.type.reversed(), node.left)
-            else -> null
+    private fun flatten(expr: LogicExpr, type: LogicType, operands: MutableList<LogicExpr>) {
+        if (expr is BinLogicExpr && expr.type == type) {
+            flatten(expr.left, type, operands)
+            flatten(expr.right, type, operands)
+        } else {
+            operands.add(expr)
         }
     }
 
@@ -224,29 +185,15 @@ class CallOptimizer : CopyVisitor {
         }
     }
 
-    /**
-     * Checks if comparison is always true.
-     */
-    private fun CmpExpr.isAlwaysTrue(): Boolean {
-        if (left !is NumberExpr || right !is NumberExpr) return false
-        val leftVal = left.accept(constEvaluator)
-        val rightVal = right.accept(constEvaluator)
-
-        return when (type) {
-            EQ -> leftVal == rightVal
-            MORE -> leftVal > rightVal
-            LESS -> leftVal < rightVal
-        }
-    }
+    override fun visit(node: CmpExpr): LogicExpr = tracked(node) { optimizeCmp(it) }
 
-    override fun visit(node: CmpExpr): LogicExpr {
-        node.left = node.left.accept(this) as ArithmExpr
-        node.right = node.right.accept(this) as ArithmExpr
+    private fun optimizeCmp(node: CmpExpr): LogicExpr {
+        val visited = CmpExpr(node.left.accept(this) as ArithmExpr, node.type, node.right.accept(this) as ArithmExpr)
 
-        return processConsts(node)
-            ?: processElemens(node)
-            ?: processSingleConst(node.left, node.type, node.right)
-            ?: node
+        return processConsts(visited)
+            ?: processElemens(visited)
+            ?: processSingleConst(visited.left, visited.type, visited.right)
+            ?: visited
     }
 
     /**
@@ -300,7 +247,7 @@ class CallOptimizer : CopyVisitor {
         if (left.left !is Element || left.right !is Element || left.type != MULT) null else {
             when {
                 type == LESS && const <= 0 -> falseCmp()
-                type == MORE && const <= 0 -> trueCmp()
+                type == MORE && const < 0 -> trueCmp()
                 type == EQ && const < 0 -> falseCmp()
                 else -> {
                     val sqrt = sqrt(const.toDouble())
@@ -309,16 +256,20 @@ class CallOptimizer : CopyVisitor {
                         val sqrtNum = sqrt.roundToInt().toString()
                         when (type) {
                             MORE -> BinLogicExpr(
+                                CmpExpr(Element, MORE, NumberExpr(sqrtNum)),
+                                OR,
+                                CmpExpr(Element, LESS, MinusExpr(NumberExpr(sqrtNum)))
+                            )
+                            LESS -> BinLogicExpr(
                                 CmpExpr(Element, LESS, NumberExpr(sqrtNum)),
                                 AND,
                                 CmpExpr(Element, MORE, MinusExpr(NumberExpr(sqrtNum)))
                             )
-                            LESS -> BinLogicExpr(
-                                CmpExpr(Element, MORE, NumberExpr(sqrtNum)),
+                            EQ -> if (const == 0) CmpExpr(Element, EQ, NumberExpr(sqrtNum)) else BinLogicExpr(
+                                CmpExpr(Element, EQ, NumberExpr(sqrtNum)),
                                 OR,
-                                CmpExpr(Element, LESS, MinusExpr(NumberExpr(sqrtNum)))
+                                CmpExpr(Element, EQ, MinusExpr(NumberExpr(sqrtNum)))
                             )
-                            EQ -> CmpExpr(Element, EQ, NumberExpr(sqrtNum))
                         }
                     }
                 }
@@ -330,7 +281,8 @@ class CallOptimizer : CopyVisitor {
      */
     private fun processSingleConstInBinAndConst(left: BinArithmExpr, type: CmpType, const: Int): LogicExpr? =
         processArithmConstAndConst(left.left, left.type, left.right, type, const)
-            ?: processArithmConstAndConst(left.right, left.type, left.left, type, const)
+            // const1 - expr can't be processed as expr - const1
+            ?: if (left.type == MINUS) null else processArithmConstAndConst(left.right, left.type, left.left, type, const)
 
     /**
      * (expr OP const1) CMP const2
@@ -347,31 +299,61 @@ class CallOptimizer : CopyVisitor {
             when (arithm) {
                 PLUS -> CmpExpr(left.clone(), cmp, NumberExpr((const - valueToRemove).toString()))
                 MINUS -> CmpExpr(left.clone(), cmp, NumberExpr((const + valueToRemove).toString()))
-                MULT -> {
-                    try {
-                        val result = const / valueToRemove.toDouble()
-                        if (result != ceil(result)) null else
-                            CmpExpr(left.clone(), cmp, NumberExpr(result.roundToInt().toString()))
-                    } catch (ex: Exception) {
-                        null
+                // dividing by negative constant reverses comparison
+                MULT -> if (valueToRemove == 0) null else {
+                    val result = const / valueToRemove.toDouble()
+                    if (result != ceil(result) || result > Int.MAX_VALUE) null else {
+                        val reversed = if (valueToRemove < 0) cmp.reversed() else cmp
+                        CmpExpr(left.clone(), reversed, NumberExpr(result.roundToInt().toString()))
                     }
                 }
             }
         }
 
-    override fun visit(node: BinArithmExpr): ArithmExpr {
-        node.left = node.left.accept(this) as ArithmExpr
-        node.right = node.right.accept(this) as ArithmExpr
+    /**
+     * Map expression is replaced by Horner form of its polynomial, if it needs no more operations.
+     * Expanding products may make expression longer, so source expression is kept if it is the shortest.
+     */
+    override fun visit(node: MapCall): Call = tracked(node) { optimizeMap(it) }
+
+    private fun optimizeMap(node: MapCall): Call {
+        val visited = node.expr.accept(this) as ArithmExpr
+        val horner = Polynomial.of(node.expr)?.toArithmExpr()
+        val candidates = listOfNotNull(horner, visited, node.expr)
+        return MapCall(candidates.minByOrNull { Polynomial.operationCount(it) }!!)
+    }
+
+    override fun visit(node: BinArithmExpr): ArithmExpr = tracked(node) { optimizeArithm(it) }
+
+    /**
+     * Optimizes every distinct node once: result of optimization depends on node only,
+     * so it is remembered and reused for equal nodes, including ones built by rewrites.
+     */
+    private inline fun <T : AstNode, R : AstNode> tracked(node: T, optimize: (T) -> R): R {
+        val known = memo[node]
+        if (known != null) {
+            memoHits++
+            @Suppress("UNCHECKED_CAST")
+            return known as R
+        }
+        visitedCount++
+        val result = factory.intern(optimize(node))
+        memo[node] = result
+        return result
+    }
 
-        val left = node.left
-        val right = node.right
+    private fun optimizeArithm(node: BinArithmExpr): ArithmExpr {
+        val left = node.left.accept(this) as ArithmExpr
+        val right = node.right.accept(this) as ArithmExpr
         val type = node.type
-        return processElements(node)
-            ?: processConsts(node)
+        val visited = BinArithmExpr(left, type, right)
+
+        return processElements(visited)
+            ?: processConsts(visited)
             ?: processSingleConst(left, type, right)
             ?: processSingleElem(left, type, right)
             ?: processBins(left, type, right)
-            ?: node
+            ?: visited
     }
 
     /**
@@ -406,7 +388,8 @@ class CallOptimizer : CopyVisitor {
     private fun processSingleConst(left: ArithmExpr, type: ArithmType, right: ArithmExpr): ArithmExpr? =
         if (left !is ConstExpr && right !is ConstExpr) null
         else processBinAndConst(left, type, right)
-            ?: processBinAndConst(right, type, left)
+            // const - expr can't be processed as expr - const
+            ?: if (type == MINUS) null else processBinAndConst(right, type, left)
 
     /**
      * expr OP const
@@ -420,10 +403,11 @@ class CallOptimizer : CopyVisitor {
                     processSimpleBinAndConst(left.left, left.type, left.right, type, res)
                         ?: processBinAndMinus(left, type, res)
                 }
+                // (a * b) * c -> (a * c) * b, (a OP b) * c -> (a * c) OP (b * c)
                 MULT -> {
                     val optimizedLeft =
                         BinArithmExpr(left.left, type, NumberExpr(res.toString())).accept(this) as ArithmExpr
-                    val optimizedRight =
+                    val optimizedRight = if (left.type == MULT) left.right else
                         BinArithmExpr(left.right, type, NumberExpr(res.toString())).accept(this) as ArithmExpr
                     BinArithmExpr(optimizedLeft, left.type, optimizedRight)
                 }
@@ -434,13 +418,13 @@ class CallOptimizer : CopyVisitor {
      * expr OP -c
      */
     private fun processBinAndMinus(left: ArithmExpr, type: ArithmType, const: Int): ArithmExpr? =
-        if (type == MULT || const >= 0) null else {
+        if (type == MULT || const >= 0 || const == Int.MIN_VALUE) null else {
             val opposite = if (type == MINUS) PLUS else MINUS
-            BinArithmExpr(left, opposite, NumberExpr(const.toString()))
+            BinArithmExpr(left, opposite, NumberExpr((-const).toString()))
         }
 
     /**
-     * (e OP c1) OP c2 | (c1 OP e) OP c2
+     * (e OP c1) OP c2 | (c1 + e) OP c2, OP is + or -
      */
     private fun processSimpleBinAndConst(
         left: ArithmExpr,
@@ -448,13 +432,13 @@ class CallOptimizer : CopyVisitor {
         right: ArithmExpr,
         outer: ArithmType,
         const: Int
-    ): ArithmExpr? = if (left is BinArithmExpr || right is BinArithmExpr || outer == MULT) null else {
+    ): ArithmExpr? = if (left is BinArithmExpr || right is BinArithmExpr || outer == MULT || inner == MULT) null else {
         processElConstBinAndConst(left, inner, right, outer, const)
-            ?: processElConstBinAndConst(right, inner, left, outer, const)
+            ?: if (inner == PLUS) processElConstBinAndConst(right, inner, left, outer, const) else null
     }
 
     /**
-     * (e OP c1) OP c2
+     * (e OP c1) OP c2, OP is + or -
      */
     private fun processElConstBinAndConst(
         elExpr: ArithmExpr,
@@ -502,147 +486,18 @@ class CallOptimizer : CopyVisitor {
         }
 
     /**
-     * expr * expr
+     * (e OP c1)*(e OP c2), (e OP e)*(e OP c), operands in any order:
+     * product is expanded by its polynomial, which keeps operand order of - and wraps like Int
      */
     private fun processBinsMult(left: BinArithmExpr, right: BinArithmExpr): ArithmExpr? {
-        return processElElAndElConst(left, right)
-            ?: processElElAndElConst(right, left)
-            ?: processElConstAndElConst(left, right)
-    }
-
-    /**
-     * (e OP e)*(e OP c)
-     */
-    private fun processElElAndElConst(left: BinArithmExpr, right: BinArithmExpr): ArithmExpr? {
-        if (left.type == MULT && right.type == MULT) return null
-        if (left.left !is Element || left.right !is Element) return null
-        val common = getStandardElConst(right) ?: return null
-        val value = common.right.accept(constEvaluator)
-
-        return when {
-            // (e - e)*(e OP const) -> 0
-            left.type == MINUS -> NumberExpr("0")
-            // (e * e)*(e +- const) -> e*e*e +- const*e*e
-            left.type == MULT -> BinArithmExpr(
-                BinArithmExpr(elem2(), MULT, Element),
-                right.type,
-                BinArithmExpr(elem2(), MULT, common.right)
-            )
-            // (e + e)*(e * const) -> 2*const*e*e
-            right.type == MULT -> BinArithmExpr(
-                NumberExpr((2 * value).toString()),
-                MULT,
-                elem2()
-            )
-            // (e + e)*(e +- const) -> 2*e*e +- 2*const*e
-            else -> BinArithmExpr(
-                BinArithmExpr(NumberExpr("2"), MULT, elem2()),
-                right.type,
-                BinArithmExpr(NumberExpr((value * 2).toString()), MULT, Element)
-            )
-        }
-    }
-
-    /**
-     * (e OP c1)*(e OP c2)
-     */
-    private fun processElConstAndElConst(left: BinArithmExpr, right: BinArithmExpr): ArithmExpr? {
-        val commonLeft = getStandardElConst(left) ?: return null
-        val commonRight = getStandardElConst(right) ?: return null
-
-        val leftVal = commonLeft.right.accept(constEvaluator)
-        val rightVal = commonRight.right.accept(constEvaluator)
-
-        return tryProcessElConstMultValues(leftVal, left.type, rightVal, right.type)
-    }
-
-    /**
-     * (e leftType leftVal)*(e rightType rightVal)
-     */
-    private fun tryProcessElConstMultValues(
-        leftVal: Int,
-        leftType: ArithmType,
-        rightVal: Int,
-        rightType: ArithmType
-    ): ArithmExpr? {
-        return tryProcessDoubleMult(leftVal, leftType, rightVal, rightType)
-            ?: tryProcessSingleMult(leftVal, leftType, rightVal, rightType)
-            ?: tryProcessSingleMult(rightVal, rightType, leftVal, leftType)
-            ?: tryProcessSumSub(rightVal, rightType, leftVal, leftType)
-    }
-
-    /**
-     * (e * a)*(e * b) -> a*b*e*e
-     */
-    private fun tryProcessDoubleMult(
-        leftVal: Int,
-        leftType: ArithmType,
-        rightVal: Int,
-        rightType: ArithmType
-    ): ArithmExpr? = if (leftType != MULT || rightType != MULT) null else {
-        BinArithmExpr(
-            NumberExpr((leftVal * rightVal).toString()),
-            MULT,
-            elem2()
-        )
-    }
-
-    /**
-     * (e * a)*(e +- b) -> a*e*e +- a*b*e
-     */
-    private fun tryProcessSingleMult(
-        leftVal: Int,
-        leftType: ArithmType,
-        rightVal: Int,
-        rightType: ArithmType
-    ): ArithmExpr? = if (leftType != MULT || rightType == MULT) null else {
-        BinArithmExpr(
-            BinArithmExpr(NumberExpr(leftType.toString()), MULT, elem2()),
-            rightType,
-            BinArithmExpr(NumberExpr((leftVal * rightVal).toString()), MULT, Element)
-        )
-    }
-
-    /**
-     * (e +- const1)*(e +- const2) -> e*e +- const1*e +- const2*e + const1*const2
-     */
-    private fun tryProcessSumSub(
-        leftVal: Int,
-        leftType: ArithmType,
-        rightVal: Int,
-        rightType: ArithmType
-    ): ArithmExpr? {
-        return if (leftType == MULT || rightType == MULT) null else {
-            val correctedLeft = if (leftType == MINUS) -leftVal else leftVal
-            val correctedRight = if (rightType == MINUS) -rightVal else rightVal
-            val b = correctedLeft + correctedRight
-            val c = leftVal * rightVal
-
-            BinArithmExpr(
-                BinArithmExpr(
-                    elem2(),
-                    PLUS,
-                    BinArithmExpr(NumberExpr(b.toString()), MULT, Element)
-                ),
-                PLUS,
-                NumberExpr(c.toString())
-            )
-        }
-    }
-
-    /**
-     * Standardizes arithmetic expression with element and const to (e OP c)
-     */
-    private fun getStandardElConst(node: BinArithmExpr): BinArithmExpr? {
-        return when {
-            node.left is Element && node.right is ConstExpr -> node
-            node.left is ConstExpr && node.right is Element -> BinArithmExpr(node.right, node.type, node.left)
-            else -> null
-        }
+        if (!isElementBin(left) || !isElementBin(right)) return null
+        return Polynomial.of(BinArithmExpr(left, MULT, right))?.toArithmExpr()
     }
 
     /**
-     * Gets element^2.
+     * e OP c, c OP e or e OP e
      */
-    private fun elem2() = BinArithmExpr(Element, MULT, Element)
+    private fun isElementBin(node: BinArithmExpr): Boolean =
+        (node.left is Element || node.left is ConstExpr) && (node.right is Element || node.right is ConstExpr)
+                && (node.left is Element || node.right is Element)
 }
\ No newline at end of file
@@ -0,0 +1,262 @@
+package ru.nsu.fit.jbr.simplifier.transformation
+
+import ru.nsu.fit.jbr.simplifier.ast.*
+import java.util.*
+
+/**
+ * Produces canonical form of call chain, so chains differing only in spelling get equal ASTs and fingerprints.
+ * - constants are folded with 32-bit overflow and spelled without leading zeros;
+ * - x - c becomes x + (-c);
+ * - operands of +, *, & and | are flattened, deduplicated (for & and |) and sorted by fingerprint, constant goes last;
+ * - comparisons with constant have constant on the right (with reversed operation, see [CmpType.reversed]),
+ *   other comparisons have operands ordered by fingerprint;
+ * - names bound by let calls are renamed to v0, v1, ... in order of binding.
+ * Transformations are exact for 32-bit arithmetic, so canonical chain evaluates to the same results.
+ * Not thread-safe.
+ */
+class Canonicalizer {
+
+    private val factory = AstFactory()
+
+    /**
+     * Fingerprints of canonical nodes.
+     */
+    private val fingerprints = IdentityHashMap<AstNode, Fingerprint>()
+
+    /**
+     * Canonical forms of visited nodes.
+     */
+    private val canonical = IdentityHashMap<AstNode, AstNode>()
+
+    /**
+     * Canonical names of names bound by let calls visited so far.
+     */
+    private val names = HashMap<String, String>()
+
+    /**
+     * Count of let calls visited so far, rebound names get new canonical names too.
+     */
+    private var letCount = 0
+
+    private val trueCmp = factory.cmp(factory.number("1"), CmpType.EQ, factory.number("1"))
+
+    private val falseCmp = factory.cmp(factory.number("1"), CmpType.EQ, factory.number("0"))
+
+    fun canonicalize(chain: CallChain): CallChain {
+        names.clear()
+        letCount = 0
+        canonical.clear()
+        val calls = chain.calls.map { call ->
+            when (call) {
+                is FilterCall -> FilterCall(logic(call.expr))
+                is MapCall -> MapCall(arithm(call.expr))
+                is LetCall -> {
+                    val expr = arithm(call.expr)
+                    names[call.name] = "v${letCount++}"
+                    // following references to rebound name have other canonical form
+                    canonical.clear()
+                    LetCall(names.getValue(call.name), expr)
+                }
+                else -> throw IllegalArgumentException("Unknown call: $call")
+            }
+        }
+        return CallChain(calls)
+    }
+
+    /**
+     * Returns fingerprint of canonical form of chain.
+     */
+    fun fingerprint(chain: CallChain): Fingerprint {
+        val calls = canonicalize(chain).calls.map { call ->
+            when (call) {
+                is FilterCall -> Fingerprint.of(FILTER, 0, fingerprint(call.expr))
+                is MapCall -> Fingerprint.of(MAP, 0, fingerprint(call.expr))
+                is LetCall -> Fingerprint.of(LET, call.name.hashCode().toLong(), fingerprint(call.expr))
+                else -> throw IllegalArgumentException("Unknown call: $call")
+            }
+        }
+        return Fingerprint.of(CHAIN, calls.size.toLong(), *calls.toTypedArray())
+    }
+
+    /**
+     * Returns fingerprint of canonical node.
+     */
+    private fun fingerprint(node: AstNode): Fingerprint = fingerprints.getOrPut(node) {
+        when (node) {
+            is BinLogicExpr -> Fingerprint.of(LOGIC + node.type.ordinal, 0, fingerprint(node.left), fingerprint(node.right))
+            is CmpExpr -> Fingerprint.of(CMP + node.type.ordinal, 0, fingerprint(node.left), fingerprint(node.right))
+            is BinArithmExpr -> Fingerprint.of(ARITHM + node.type.ordinal, 0, fingerprint(node.left), fingerprint(node.right))
+            is Element -> Fingerprint.of(ELEMENT, 0)
+            is Reference -> Fingerprint.of(REFERENCE, node.name.hashCode().toLong())
+            is ConstExpr -> Fingerprint.of(CONST, constValue(node).toLong())
+            else -> throw IllegalArgumentException("Unknown expression: $node")
+        }
+    }
+
+    private fun logic(expr: LogicExpr): LogicExpr = memoized(expr) {
+        when (expr) {
+            is CmpExpr -> cmp(expr)
+            is BinLogicExpr -> binLogic(expr)
+        }
+    }
+
+    private fun cmp(expr: CmpExpr): LogicExpr {
+        val left = arithm(expr.left)
+        val right = arithm(expr.right)
+        if (left is ConstExpr && right is ConstExpr) {
+            val leftValue = constValue(left)
+            val rightValue = constValue(right)
+            val result = when (expr.type) {
+                CmpType.MORE -> leftValue > rightValue
+                CmpType.LESS -> leftValue < rightValue
+                CmpType.EQ -> leftValue == rightValue
+            }
+            return if (result) trueCmp else falseCmp
+        }
+        val swap = left is ConstExpr || right !is ConstExpr && fingerprint(left) > fingerprint(right)
+        return if (swap) {
+            factory.cmp(right, expr.type.reversed(), left)
+        } else {
+            factory.cmp(left, expr.type, right)
+        }
+    }
+
+    private fun binLogic(expr: BinLogicExpr): LogicExpr {
+        val operands = TreeMap<Fingerprint, LogicExpr>()
+        val neutral = if (expr.type == LogicType.AND) trueCmp else falseCmp
+        val absorbing = if (expr.type == LogicType.AND) falseCmp else trueCmp
+        val flat = mutableListOf<LogicExpr>()
+        collect(logic(expr.left), expr.type, flat)
+        collect(logic(expr.right), expr.type, flat)
+        for (operand in flat) {
+            if (operand == absorbing) return absorbing
+            if (operand != neutral) {
+                operands[fingerprint(operand)] = operand
+            }
+        }
+        if (operands.isEmpty()) return neutral
+        return operands.values.reduce { left, right -> factory.binLogic(left, expr.type, right) }
+    }
+
+    private fun collect(expr: LogicExpr, type: LogicType, operands: MutableList<LogicExpr>) {
+        if (expr is BinLogicExpr && expr.type == type) {
+            collect(expr.left, type, operands)
+            collect(expr.right, type, operands)
+        } else {
+            operands.add(expr)
+        }
+    }
+
+    private fun arithm(expr: ArithmExpr): ArithmExpr = memoized(expr) {
+        when (expr) {
+            is Element -> Element
+            is Reference -> factory.reference(names[expr.name] ?: expr.name)
+            is ConstExpr -> constant(constValue(expr))
+            is BinArithmExpr -> binArithm(expr)
+        }
+    }
+
+    private fun binArithm(expr: BinArithmExpr): ArithmExpr {
+        if (expr.type == ArithmType.MINUS) {
+            val left = arithm(expr.left)
+            val right = arithm(expr.right)
+            return when {
+                left is ConstExpr && right is ConstExpr -> constant(constValue(left) - constValue(right))
+                // x - c -> x + (-c)
+                right is ConstExpr -> sum(listOf(left), -constValue(right))
+                else -> factory.binArithm(left, ArithmType.MINUS, right)
+            }
+        }
+
+        val left = arithm(expr.left)
+        val right = arithm(expr.right)
+        if (expr.type == ArithmType.PLUS) return sum(listOf(left, right), 0)
+
+        val factors = mutableListOf<ArithmExpr>()
+        collect(left, ArithmType.MULT, factors)
+        collect(right, ArithmType.MULT, factors)
+        var constant = 1
+        val variables = mutableListOf<ArithmExpr>()
+        for (factor in factors) {
+            if (factor is ConstExpr) constant *= constValue(factor) else variables.add(factor)
+        }
+        return product(variables, constant)
+    }
+
+    private fun collect(expr: ArithmExpr, type: ArithmType, operands: MutableList<ArithmExpr>) {
+        if (expr is BinArithmExpr && expr.type == type) {
+            collect(expr.left, type, operands)
+            collect(expr.right, type, operands)
+        } else {
+            operands.add(expr)
+        }
+    }
+
+    /**
+     * Builds canonical sum of canonical operands, which may be sums themselves, and constant.
+     */
+    private fun sum(operands: List<ArithmExpr>, constant: Int): ArithmExpr {
+        val variables = mutableListOf<ArithmExpr>()
+        var total = constant
+        for (operand in operands) {
+            val flat = mutableListOf<ArithmExpr>()
+            collect(operand, ArithmType.PLUS, flat)
+            for (term in flat) {
+                if (term is ConstExpr) total += constValue(term) else variables.add(term)
+            }
+        }
+        return combine(variables, ArithmType.PLUS, total, 0)
+    }
+
+    /**
+     * Builds canonical product of canonical non-constant factors and constant.
+     */
+    private fun product(variables: List<ArithmExpr>, constant: Int): ArithmExpr {
+        if (constant == 0) return constant(0)
+        return combine(variables, ArithmType.MULT, constant, 1)
+    }
+
+    /**
+     * Builds left-deep tree of variables sorted by fingerprint with constant as the last operand.
+     */
+    private fun combine(variables: List<ArithmExpr>, type: ArithmType, constant: Int, neutral: Int): ArithmExpr {
+        val sorted = variables.sortedBy { fingerprint(it) }
+        var result: ArithmExpr? = null
+        for (variable in sorted) {
+            result = if (result == null) variable else factory.binArithm(result, type, variable)
+        }
+        if (result == null) return constant(constant)
+        if (constant == neutral) return result
+        return factory.binArithm(result, type, constant(constant))
+    }
+
+    private fun constant(value: Int): ArithmExpr = when {
+        value >= 0 -> factory.number(value.toString())
+        // -2147483648 can't be written as constant
+        value == Int.MIN_VALUE -> factory.binArithm(constant(Int.MIN_VALUE + 1), ArithmType.PLUS, constant(-1))
+        else -> factory.minus(factory.number((-value).toString()))
+    }
+
+    private fun constValue(expr: ConstExpr): Int = when (expr) {
+        is NumberExpr -> expr.value.toInt()
+        is MinusExpr -> -expr.number.value.toInt()
+    }
+
+    private fun <T : AstNode> memoized(node: T, create: () -> T): T {
+        @Suppress("UNCHECKED_CAST")
+        return canonical.getOrPut(node) { create() } as T
+    }
+
+    companion object {
+        private const val CHAIN = 0
+        private const val FILTER = 1
+        private const val MAP = 2
+        private const val LET = 3
+        private const val ELEMENT = 4
+        private const val REFERENCE = 5
+        private const val CONST = 6
+        private const val LOGIC = 10
+        private const val CMP = 20
+        private const val ARITHM = 30
+    }
+}
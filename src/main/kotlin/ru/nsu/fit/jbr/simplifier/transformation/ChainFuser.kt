@@ -0,0 +1,69 @@
+package ru.nsu.fit.jbr.simplifier.transformation
+
+import ru.nsu.fit.jbr.simplifier.ast.*
+
+/**
+ * Processes call chain left-to-right and builds map that is superposition of all maps,
+ * and filter that is conjunction of all filters with preceding maps applied.
+ * Every call is injected with current map once, previous results are referenced, not copied,
+ * so fusion takes time and memory linear in chain size.
+ */
+class ChainFuser(
+    /**
+     * Factory used to share equal subtrees of superposition.
+     */
+    private val factory: AstFactory = AstFactory()
+): UnitVisitor {
+
+    /**
+     * Superposition of maps, null if chain has no maps.
+     */
+    var map: MapCall? = null
+        private set
+
+    /**
+     * Filter expressions in terms of initial element, in order of calls.
+     */
+    private val filters = ArrayList<LogicExpr>()
+
+    /**
+     * Expressions of bound names in terms of initial element.
+     */
+    private val bindings = HashMap<String, ArithmExpr>()
+
+    /**
+     * Conjunction of filters, null if chain has no filters.
+     * Conjunction is nested to the right: f1 & (f2 & f3).
+     */
+    val filter: FilterCall?
+        get() = ChainSummary.conjunction(filters, factory)?.let { FilterCall(it) }
+
+    /**
+     * Summary of visited calls, references to names bound before them are kept.
+     */
+    fun summary(): ChainSummary = ChainSummary(filters.toList(), map?.expr, HashMap(bindings))
+
+    /**
+     * Main map = new map with injected main map expression.
+     */
+    override fun visit(node: MapCall) {
+        map = MapCall(inject(node.expr) as ArithmExpr)
+    }
+
+    /**
+     * Remembers bound expression with injected main map expression.
+     */
+    override fun visit(node: LetCall) {
+        bindings[node.name] = inject(node.expr) as ArithmExpr
+    }
+
+    /**
+     * Remembers filter with injected main map expression.
+     */
+    override fun visit(node: FilterCall) {
+        filters.add(inject(node.expr) as LogicExpr)
+    }
+
+    private fun inject(expr: AstNode): AstNode =
+        expr.accept(ArithmExprElementInjector(map?.expr ?: Element, factory, bindings))
+}
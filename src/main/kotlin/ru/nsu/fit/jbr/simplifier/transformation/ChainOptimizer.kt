@@ -0,0 +1,10 @@
+package ru.nsu.fit.jbr.simplifier.transformation
+
+import ru.nsu.fit.jbr.simplifier.ast.CallChain
+
+/**
+ * Produces equivalent call chain, which is cheaper to evaluate.
+ */
+interface ChainOptimizer {
+    fun optimize(chain: CallChain): CallChain
+}
@@ -0,0 +1,69 @@
+package ru.nsu.fit.jbr.simplifier.transformation
+
+import ru.nsu.fit.jbr.simplifier.ast.*
+
+/**
+ * Fused segment of call chain: filters and map in terms of element entering the segment,
+ * and expressions of names bound in the segment. References to names bound before the segment are kept.
+ * Composition of summaries by [then] is associative, so segments can be fused independently.
+ */
+class ChainSummary(
+    /**
+     * Filter expressions in order of calls.
+     */
+    val filters: List<LogicExpr>,
+    /**
+     * Superposition of maps, null if segment has no maps.
+     */
+    val map: ArithmExpr?,
+    val bindings: Map<String, ArithmExpr>
+) {
+
+    companion object {
+        val EMPTY = ChainSummary(emptyList(), null, emptyMap())
+
+        /**
+         * Conjunction of expressions nested to the right: f1 & (f2 & f3), null if there are no expressions.
+         */
+        fun conjunction(filters: List<LogicExpr>, factory: AstFactory): LogicExpr? {
+            if (filters.isEmpty()) return null
+            var expr = filters.last()
+            for (i in filters.size - 2 downTo 0) {
+                expr = factory.binLogic(filters[i], LogicType.AND, expr)
+            }
+            return expr
+        }
+    }
+
+    /**
+     * Summary of this segment followed by next one:
+     * element and references of next segment are replaced with map and bindings of this one.
+     */
+    fun then(next: ChainSummary, factory: AstFactory = AstFactory()): ChainSummary {
+        if (map == null && bindings.isEmpty()) {
+            return ChainSummary(filters + next.filters, next.map, next.bindings)
+        }
+        // one injector for the whole segment, so subtrees shared by its expressions stay shared
+        val injector = ArithmExprElementInjector(map ?: Element, factory, bindings)
+
+        val filters = ArrayList<LogicExpr>(filters.size + next.filters.size)
+        filters.addAll(this.filters)
+        next.filters.mapTo(filters) { it.accept(injector) as LogicExpr }
+
+        val bindings = HashMap(bindings)
+        for ((name, expr) in next.bindings) {
+            bindings[name] = expr.accept(injector) as ArithmExpr
+        }
+
+        val map = next.map?.accept(injector) as ArithmExpr? ?: map
+        return ChainSummary(filters, map, bindings)
+    }
+
+    /**
+     * Chain of single filter and single map, like [ru.nsu.fit.jbr.simplifier.simplifyCallChain] produces.
+     */
+    fun toCallChain(factory: AstFactory = AstFactory()): CallChain {
+        val filter = FilterCall(conjunction(filters, factory) ?: CallOptimizer.trueCmp())
+        return CallChain(mutableListOf(filter, MapCall(map ?: Element)))
+    }
+}
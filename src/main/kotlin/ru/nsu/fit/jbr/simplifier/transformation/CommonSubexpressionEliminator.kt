@@ -0,0 +1,116 @@
+package ru.nsu.fit.jbr.simplifier.transformation
+
+import ru.nsu.fit.jbr.simplifier.ast.*
+import java.util.*
+
+/**
+ * Binds arithmetic subexpressions used more than once to names with let calls
+ * and replaces their entries with references, so every shared subexpression is printed and computed once.
+ * Subexpressions are shared only between calls that see the same element:
+ * filters up to the first map (inclusive). Existing let calls are kept as is.
+ */
+class CommonSubexpressionEliminator(
+    /**
+     * Factory used to find structurally equal subexpressions.
+     */
+    private val factory: AstFactory = AstFactory()
+) {
+
+    fun eliminate(node: CallChain): CallChain {
+        val usedNames = node.calls.filterIsInstance<LetCall>().map { it.name }.toHashSet()
+        val names = generateSequence(0) { it + 1 }.map { "t$it" }.filter { it !in usedNames }.iterator()
+
+        val calls = mutableListOf<Call>()
+        val segment = mutableListOf<Call>()
+        for (call in node.calls) {
+            if (call is LetCall) {
+                eliminateInSegment(segment, names, calls)
+                calls.add(call)
+                continue
+            }
+            segment.add(call)
+            if (call is MapCall) {
+                eliminateInSegment(segment, names, calls)
+            }
+        }
+        eliminateInSegment(segment, names, calls)
+        return CallChain(calls)
+    }
+
+    /**
+     * Adds let calls for subexpressions shared in segment and rewritten segment calls to result.
+     */
+    private fun eliminateInSegment(segment: MutableList<Call>, names: Iterator<String>, result: MutableList<Call>) {
+        if (segment.isEmpty()) return
+
+        val calls = segment.map { factory.canonical(it) }
+        segment.clear()
+
+        val counter = UsageCounter()
+        calls.forEach { it.accept(counter) }
+
+        val bound = LinkedHashMap<BinArithmExpr, Reference>()
+        for (expr in counter.postOrder) {
+            if (expr is BinArithmExpr && counter.usages.getValue(expr) > 1) {
+                bound[expr] = factory.reference(names.next())
+            }
+        }
+
+        val replacer = ReferenceReplacer(bound)
+        for ((expr, reference) in bound) {
+            result.add(LetCall(reference.name, replacer.replaceChildren(expr)))
+        }
+        calls.mapTo(result) { it.accept(replacer) as Call }
+    }
+
+    /**
+     * Counts parents of every distinct node and remembers nodes in post-order,
+     * so nodes go after all their children.
+     */
+    private class UsageCounter : UnitVisitor {
+        val usages = IdentityHashMap<AstNode, Int>()
+        val postOrder = mutableListOf<AstNode>()
+
+        private fun countUsage(node: AstNode, visitChildren: () -> Unit) {
+            val count = usages[node]
+            usages[node] = (count ?: 0) + 1
+            if (count == null) {
+                visitChildren()
+                postOrder.add(node)
+            }
+        }
+
+        override fun visit(node: BinLogicExpr) = countUsage(node) { super.visit(node) }
+
+        override fun visit(node: CmpExpr) = countUsage(node) { super.visit(node) }
+
+        override fun visit(node: BinArithmExpr) = countUsage(node) { super.visit(node) }
+    }
+
+    /**
+     * Replaces bound subexpressions with references to them.
+     */
+    private inner class ReferenceReplacer(private val bound: Map<BinArithmExpr, Reference>) : CopyVisitor {
+        private val replaced = IdentityHashMap<AstNode, AstNode>()
+
+        private fun <T : AstNode> memoized(node: T, replace: () -> T): T {
+            @Suppress("UNCHECKED_CAST")
+            return replaced.getOrPut(node) { replace() } as T
+        }
+
+        fun replaceChildren(node: BinArithmExpr): BinArithmExpr =
+            factory.binArithm(node.left.accept(this) as ArithmExpr, node.type, node.right.accept(this) as ArithmExpr)
+
+        override fun visit(node: BinLogicExpr): AstNode = memoized(node) {
+            factory.binLogic(node.left.accept(this) as LogicExpr, node.type, node.right.accept(this) as LogicExpr)
+        }
+
+        override fun visit(node: CmpExpr): AstNode = memoized(node) {
+            factory.cmp(node.left.accept(this) as ArithmExpr, node.type, node.right.accept(this) as ArithmExpr)
+        }
+
+        override fun visit(node: BinArithmExpr): AstNode = memoized(node) {
+            bound[node] ?: replaceChildren(node)
+        }
+    }
+}
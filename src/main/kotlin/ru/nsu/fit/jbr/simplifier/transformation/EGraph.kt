@@ -0,0 +1,313 @@
+package ru.nsu.fit.jbr.simplifier.transformation
+
+import ru.nsu.fit.jbr.simplifier.ast.*
+import java.util.*
+
+/**
+ * E-graph: classes of equivalent expressions, where children of every node are classes, not nodes.
+ * Classes are merged by [union], and [rebuild] restores congruence: equal nodes always belong to one class.
+ * Every class also keeps its constant value (1 or 0 for logic classes), polynomial of element for arithmetic classes
+ * without references, and, for logic classes, set of elements satisfying it, if it compares element with constants only.
+ */
+class EGraph {
+
+    enum class Op(val logic: Boolean) {
+        ELEMENT(false), REFERENCE(false), NUMBER(false), ADD(false), SUB(false), MUL(false),
+        MORE(true), LESS(true), EQ(true), AND(true), OR(true), BOOL(true)
+    }
+
+    /**
+     * Node of e-graph. Value is set for NUMBER and BOOL nodes, name - for REFERENCE nodes.
+     */
+    class ENode(val op: Op, val children: IntArray, val value: Int = 0, val name: String? = null) {
+        private val hash = Objects.hash(op, children.contentHashCode(), value, name)
+
+        override fun hashCode(): Int = hash
+
+        override fun equals(other: Any?): Boolean = this === other || other is ENode && hash == other.hash
+                && op == other.op && value == other.value && name == other.name && children.contentEquals(other.children)
+    }
+
+    class EClass(val id: Int, val logic: Boolean) {
+        val nodes = ArrayList<ENode>()
+
+        var constant: Int? = null
+            internal set
+
+        var intervals: IntervalSet? = null
+            internal set
+
+        var polynomial: Polynomial? = null
+            internal set
+    }
+
+    /**
+     * Thrown when budget of e-graph is exhausted, e-graph stays consistent.
+     */
+    class BudgetExceededException : RuntimeException("E-graph budget is exhausted", null, false, false)
+
+    companion object {
+        private val NO_CHILDREN = IntArray(0)
+
+        private val ELEMENT_NODE = ENode(Op.ELEMENT, NO_CHILDREN)
+    }
+
+    /**
+     * Union-find parents of class ids.
+     */
+    private val parents = ArrayList<Int>()
+
+    private val classes = TreeMap<Int, EClass>()
+
+    /**
+     * Class of every canonical node.
+     */
+    private val memo = HashMap<ENode, Int>()
+
+    val nodeCount: Int
+        get() = memo.size
+
+    /**
+     * Adding new node fails with [BudgetExceededException] when e-graph has so many nodes.
+     */
+    var nodeLimit = Int.MAX_VALUE
+
+    /**
+     * Adding new node fails with [BudgetExceededException] after this [System.nanoTime].
+     */
+    var deadline = Long.MAX_VALUE
+
+    fun checkBudget() {
+        if (memo.size >= nodeLimit || System.nanoTime() - deadline > 0) throw BudgetExceededException()
+    }
+
+    val classIds: List<Int>
+        get() = classes.keys.toList()
+
+    fun eClass(id: Int): EClass = classes.getValue(find(id))
+
+    fun find(id: Int): Int {
+        var root = id
+        while (parents[root] != root) root = parents[root]
+        var current = id
+        while (parents[current] != root) {
+            val next = parents[current]
+            parents[current] = root
+            current = next
+        }
+        return root
+    }
+
+    fun add(node: ENode): Int {
+        val canonical = canonicalize(node)
+        memo[canonical]?.let { return find(it) }
+        checkBudget()
+
+        val id = parents.size
+        parents.add(id)
+        val eClass = EClass(id, canonical.op.logic)
+        eClass.nodes.add(canonical)
+        eClass.constant = constantOf(canonical)
+        eClass.intervals = intervalsOf(canonical)
+        eClass.polynomial = polynomialOf(canonical)
+        classes[id] = eClass
+        memo[canonical] = id
+        return id
+    }
+
+    fun add(op: Op, left: Int, right: Int): Int = add(ENode(op, intArrayOf(left, right)))
+
+    fun number(value: Int): Int = add(ENode(Op.NUMBER, NO_CHILDREN, value))
+
+    fun bool(value: Boolean): Int = add(ENode(Op.BOOL, NO_CHILDREN, if (value) 1 else 0))
+
+    /**
+     * Adds expression, equal subtrees are added once.
+     */
+    fun add(expr: AstNode): Int = add(expr, IdentityHashMap())
+
+    private fun add(expr: AstNode, added: MutableMap<AstNode, Int>): Int = added.getOrPut(expr) {
+        when (expr) {
+            is Element -> add(ELEMENT_NODE)
+            is Reference -> add(ENode(Op.REFERENCE, NO_CHILDREN, name = expr.name))
+            is NumberExpr -> number(expr.value.toInt())
+            is MinusExpr -> number(-expr.number.value.toInt())
+            is BinArithmExpr -> add(
+                when (expr.type) {
+                    ArithmType.PLUS -> Op.ADD
+                    ArithmType.MINUS -> Op.SUB
+                    ArithmType.MULT -> Op.MUL
+                },
+                add(expr.left, added),
+                add(expr.right, added)
+            )
+            is CmpExpr -> add(
+                when (expr.type) {
+                    CmpType.MORE -> Op.MORE
+                    CmpType.LESS -> Op.LESS
+                    CmpType.EQ -> Op.EQ
+                },
+                add(expr.left, added),
+                add(expr.right, added)
+            )
+            is BinLogicExpr -> add(
+                when (expr.type) {
+                    LogicType.AND -> Op.AND
+                    LogicType.OR -> Op.OR
+                },
+                add(expr.left, added),
+                add(expr.right, added)
+            )
+            else -> throw IllegalArgumentException("Not an expression: $expr")
+        }
+    }
+
+    /**
+     * Merges classes, returns false if they are already the same class.
+     * Congruence is not restored until [rebuild].
+     */
+    fun union(first: Int, second: Int): Boolean {
+        var target = find(first)
+        var source = find(second)
+        if (target == source) return false
+        if (classes.getValue(target).nodes.size < classes.getValue(source).nodes.size) {
+            val swap = target
+            target = source
+            source = swap
+        }
+        parents[source] = target
+        val merged = classes.remove(source)!!
+        val eClass = classes.getValue(target)
+        eClass.nodes.addAll(merged.nodes)
+        eClass.constant = eClass.constant ?: merged.constant
+        eClass.intervals = eClass.intervals ?: merged.intervals
+        eClass.polynomial = eClass.polynomial ?: merged.polynomial
+        return true
+    }
+
+    /**
+     * Canonicalizes all nodes and merges classes containing equal nodes until nothing changes,
+     * then updates class constants, interval sets and polynomials.
+     */
+    fun rebuild() {
+        do {
+            memo.clear()
+            val congruent = ArrayList<Pair<Int, Int>>()
+            for (eClass in classes.values) {
+                val nodes = eClass.nodes.mapTo(LinkedHashSet()) { canonicalize(it) }
+                eClass.nodes.clear()
+                eClass.nodes.addAll(nodes)
+                for (node in nodes) {
+                    val existing = memo.putIfAbsent(node, eClass.id)
+                    if (existing != null && existing != eClass.id) {
+                        congruent.add(existing to eClass.id)
+                    }
+                }
+            }
+            var merged = false
+            for ((first, second) in congruent) {
+                merged = union(first, second) or merged
+            }
+        } while (merged)
+        analyze()
+    }
+
+    /**
+     * Computes constants, interval sets and polynomials of classes from their nodes until nothing changes.
+     */
+    private fun analyze() {
+        do {
+            var changed = false
+            for (eClass in classes.values) {
+                for (node in eClass.nodes) {
+                    if (eClass.constant == null) {
+                        eClass.constant = constantOf(node)
+                        changed = changed || eClass.constant != null
+                    }
+                    if (eClass.intervals == null) {
+                        eClass.intervals = intervalsOf(node)
+                        changed = changed || eClass.intervals != null
+                    }
+                    if (eClass.polynomial == null) {
+                        eClass.polynomial = polynomialOf(node)
+                        changed = changed || eClass.polynomial != null
+                    }
+                }
+            }
+        } while (changed)
+    }
+
+    private fun canonicalize(node: ENode): ENode {
+        if (node.children.isEmpty()) return node
+        val children = IntArray(node.children.size) { find(node.children[it]) }
+        return if (children.contentEquals(node.children)) node else ENode(node.op, children, node.value, node.name)
+    }
+
+    private fun constant(id: Int): Int? = classes[find(id)]?.constant
+
+    private fun constantOf(node: ENode): Int? {
+        if (node.op == Op.NUMBER || node.op == Op.BOOL) return node.value
+        if (node.children.size != 2) return null
+        val left = constant(node.children[0])
+        val right = constant(node.children[1])
+        return when (node.op) {
+            // false & expr, true | expr
+            Op.AND -> if (left == 0 || right == 0) 0 else if (left != null && right != null) 1 else null
+            Op.OR -> if (left == 1 || right == 1) 1 else if (left != null && right != null) 0 else null
+            else -> if (left == null || right == null) null else when (node.op) {
+                Op.ADD -> left + right
+                Op.SUB -> left - right
+                Op.MUL -> left * right
+                Op.MORE -> if (left > right) 1 else 0
+                Op.LESS -> if (left < right) 1 else 0
+                else -> if (left == right) 1 else 0
+            }
+        }
+    }
+
+    private fun polynomialOf(node: ENode): Polynomial? = when (node.op) {
+        Op.ELEMENT -> Polynomial.ELEMENT
+        Op.NUMBER -> Polynomial.constant(node.value)
+        Op.ADD, Op.SUB, Op.MUL -> {
+            val left = classes[find(node.children[0])]?.polynomial
+            val right = classes[find(node.children[1])]?.polynomial
+            if (left == null || right == null) null else when (node.op) {
+                Op.ADD -> left.plus(right)
+                Op.SUB -> left.minus(right)
+                else -> left.times(right)
+            }
+        }
+        else -> null
+    }
+
+    private fun intervalsOf(node: ENode): IntervalSet? {
+        if (node.op == Op.BOOL) return if (node.value == 1) IntervalSet.ALL else IntervalSet.EMPTY
+        if (!node.op.logic) return null
+        val left = node.children[0]
+        val right = node.children[1]
+        return when (node.op) {
+            Op.AND -> classes[find(left)]?.intervals?.let { set -> classes[find(right)]?.intervals?.let { set.intersect(it) } }
+            Op.OR -> classes[find(left)]?.intervals?.let { set -> classes[find(right)]?.intervals?.let { set.union(it) } }
+            else -> {
+                val type = when (node.op) {
+                    Op.MORE -> CmpType.MORE
+                    Op.LESS -> CmpType.LESS
+                    else -> CmpType.EQ
+                }
+                val leftConst = constant(left)
+                val rightConst = constant(right)
+                when {
+                    leftConst != null && rightConst != null -> if (constantOf(node) == 1) IntervalSet.ALL else IntervalSet.EMPTY
+                    isElement(left) && rightConst != null -> IntervalSet.of(type, rightConst)
+                    leftConst != null && isElement(right) -> IntervalSet.of(type.reversed(), leftConst)
+                    else -> null
+                }
+            }
+        }
+    }
+
+    private fun isElement(id: Int): Boolean {
+        val element = memo[ELEMENT_NODE] ?: return false
+        return find(element) == find(id)
+    }
+}
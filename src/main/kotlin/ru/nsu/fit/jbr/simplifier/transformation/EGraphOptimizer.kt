@@ -0,0 +1,361 @@
+package ru.nsu.fit.jbr.simplifier.transformation
+
+import ru.nsu.fit.jbr.simplifier.ast.*
+import ru.nsu.fit.jbr.simplifier.transformation.EGraph.ENode
+import ru.nsu.fit.jbr.simplifier.transformation.EGraph.Op
+
+/**
+ * Optimizes call chain by equality saturation. Expressions of all calls are added to [EGraph],
+ * rewrite rules add equivalent forms until no rule adds anything new or budget is exhausted,
+ * then the cheapest form of every call expression is extracted.
+ * Unlike [CallOptimizer], result doesn't depend on order of rules.
+ * All rules hold for 32-bit wrapping arithmetic, so (e + 1) > 5 is not rewritten to e > 4.
+ * Not thread-safe, because it keeps statistics of the last run.
+ */
+class EGraphOptimizer(
+    /**
+     * Saturation stops when e-graph has more nodes.
+     */
+    private val nodeLimit: Int = 10_000,
+    private val iterationLimit: Int = 30,
+    private val timeLimitMillis: Long = 100
+) : ChainOptimizer {
+
+    companion object {
+        private const val LEAF_COST = 1L
+        private const val ADD_COST = 2L
+        private const val MULT_COST = 4L
+        private const val CMP_COST = 2L
+        private const val LOGIC_COST = 1L
+
+        /**
+         * Cost of chain: operations weighted by evaluation cost, equal subtrees are counted for every use.
+         */
+        fun cost(chain: CallChain): Long = chain.calls.sumByLong { call ->
+            when (call) {
+                is FilterCall -> cost(call.expr)
+                is MapCall -> cost(call.expr)
+                is LetCall -> cost(call.expr)
+                else -> 0L
+            }
+        }
+
+        private fun cost(expr: AstNode): Long = when (expr) {
+            is BinArithmExpr -> (if (expr.type == ArithmType.MULT) MULT_COST else ADD_COST) + cost(expr.left) + cost(expr.right)
+            is CmpExpr -> CMP_COST + cost(expr.left) + cost(expr.right)
+            is BinLogicExpr -> LOGIC_COST + cost(expr.left) + cost(expr.right)
+            else -> LEAF_COST
+        }
+
+        /**
+         * Own cost of node, null if node can't be written (constant -2147483648).
+         */
+        private fun ownCost(node: ENode): Long? = when (node.op) {
+            Op.ELEMENT, Op.REFERENCE -> LEAF_COST
+            Op.NUMBER -> if (node.value == Int.MIN_VALUE) null else LEAF_COST
+            Op.ADD, Op.SUB -> ADD_COST
+            Op.MUL -> MULT_COST
+            Op.MORE, Op.LESS, Op.EQ -> CMP_COST
+            Op.AND, Op.OR -> LOGIC_COST
+            // written as (1=1) or (1=0)
+            Op.BOOL -> CMP_COST + 2 * LEAF_COST
+        }
+
+        private inline fun <T> Iterable<T>.sumByLong(selector: (T) -> Long): Long {
+            var sum = 0L
+            for (element in this) sum += selector(element)
+            return sum
+        }
+    }
+
+    /**
+     * Count of iterations of the last run.
+     */
+    var iterations = 0
+        private set
+
+    /**
+     * True if the last run stopped because rules found nothing new, false if it ran out of budget.
+     */
+    var saturated = false
+        private set
+
+    /**
+     * Count of e-graph nodes at the end of the last run.
+     */
+    var nodeCount = 0
+        private set
+
+    override fun optimize(chain: CallChain): CallChain {
+        val graph = EGraph()
+        val roots = chain.calls.map { call ->
+            when (call) {
+                is FilterCall -> graph.add(call.expr)
+                is MapCall -> graph.add(call.expr)
+                is LetCall -> graph.add(call.expr)
+                else -> throw IllegalArgumentException("Unknown call: $call")
+            }
+        }
+        graph.rebuild()
+        saturate(graph)
+        nodeCount = graph.nodeCount
+
+        val firstCall = chain.calls.firstOrNull()
+        if (firstCall is FilterCall && graph.eClass(roots[0]).constant == 0) {
+            return CallChain(mutableListOf(FilterCall(CallOptimizer.falseCmp()), MapCall(Element)))
+        }
+
+        val extractor = Extractor(graph)
+        val calls = chain.calls.mapIndexed { index, call ->
+            val expr = extractor.extract(roots[index])
+            when (call) {
+                is FilterCall -> FilterCall(expr as LogicExpr)
+                is MapCall -> MapCall(expr as ArithmExpr)
+                else -> LetCall((call as LetCall).name, expr as ArithmExpr)
+            }
+        }
+        return CallChain(calls)
+    }
+
+    private fun saturate(graph: EGraph) {
+        iterations = 0
+        saturated = false
+        // single rule can add many nodes, so budget is checked by e-graph on every new node
+        graph.nodeLimit = nodeLimit
+        graph.deadline = System.nanoTime() + timeLimitMillis * 1_000_000
+        try {
+            while (iterations < iterationLimit) {
+                iterations++
+                val rewriter = Rewriter(graph)
+                val matches = graph.classIds.flatMap { id -> graph.eClass(id).nodes.map { id to it } }
+                for ((id, node) in matches) {
+                    rewriter.rewrite(id, node)
+                }
+                rewriter.fold()
+                graph.rebuild()
+                if (!rewriter.changed) {
+                    saturated = true
+                    return
+                }
+            }
+        } catch (ex: EGraph.BudgetExceededException) {
+            graph.rebuild()
+        }
+    }
+
+    /**
+     * Applies rewrite rules to nodes of e-graph.
+     */
+    private class Rewriter(private val graph: EGraph) {
+
+        private val initialNodeCount = graph.nodeCount
+
+        private var merged = false
+
+        val changed: Boolean
+            get() = merged || graph.nodeCount != initialNodeCount
+
+        private fun same(id: Int, other: Int) {
+            merged = graph.union(id, other) || merged
+        }
+
+        private fun node(op: Op, left: Int, right: Int) = graph.add(op, left, right)
+
+        private fun constant(id: Int): Int? = graph.eClass(id).constant
+
+        private fun nodes(id: Int, op: Op): List<ENode> = graph.eClass(id).nodes.filter { it.op == op }
+
+        private fun sameClass(first: Int, second: Int) = graph.find(first) == graph.find(second)
+
+        fun rewrite(id: Int, node: ENode) {
+            if (node.children.size != 2) return
+            val left = graph.find(node.children[0])
+            val right = graph.find(node.children[1])
+            when (node.op) {
+                Op.ADD -> add(id, left, right)
+                Op.SUB -> sub(id, left, right)
+                Op.MUL -> mul(id, left, right)
+                Op.MORE, Op.LESS -> {
+                    // a > b -> b < a
+                    same(id, node(if (node.op == Op.MORE) Op.LESS else Op.MORE, right, left))
+                    // a > a -> false
+                    if (left == right) same(id, graph.bool(false))
+                }
+                Op.EQ -> eq(id, left, right)
+                Op.AND, Op.OR -> logic(id, node.op, left, right)
+                else -> Unit
+            }
+        }
+
+        private fun add(id: Int, left: Int, right: Int) {
+            // a + b -> b + a
+            same(id, node(Op.ADD, right, left))
+            // a + 0 -> a
+            if (constant(right) == 0) same(id, left)
+            // a + a -> a * 2
+            if (left == right) same(id, node(Op.MUL, left, graph.number(2)))
+            for (inner in nodes(left, Op.ADD)) {
+                // (a + b) + c -> a + (b + c)
+                same(id, node(Op.ADD, inner.children[0], node(Op.ADD, inner.children[1], right)))
+            }
+            for (inner in nodes(left, Op.SUB)) {
+                // (a - b) + b -> a
+                if (sameClass(inner.children[1], right)) same(id, inner.children[0])
+            }
+            factor(id, Op.ADD, left, right)
+        }
+
+        private fun sub(id: Int, left: Int, right: Int) {
+            // a - a -> 0
+            if (left == right) same(id, graph.number(0))
+            // a - c -> a + (-c)
+            constant(right)?.let { same(id, node(Op.ADD, left, graph.number(-it))) }
+            for (inner in nodes(left, Op.ADD)) {
+                // (a + b) - b -> a, (b + a) - b -> a
+                if (sameClass(inner.children[1], right)) same(id, inner.children[0])
+                if (sameClass(inner.children[0], right)) same(id, inner.children[1])
+            }
+            factor(id, Op.SUB, left, right)
+        }
+
+        /**
+         * (a * b) OP (a * c) -> a * (b OP c)
+         */
+        private fun factor(id: Int, op: Op, left: Int, right: Int) {
+            for (leftMult in nodes(left, Op.MUL)) {
+                for (rightMult in nodes(right, Op.MUL)) {
+                    graph.checkBudget()
+                    if (sameClass(leftMult.children[0], rightMult.children[0])) {
+                        same(id, node(Op.MUL, leftMult.children[0], node(op, leftMult.children[1], rightMult.children[1])))
+                    }
+                }
+            }
+        }
+
+        private fun mul(id: Int, left: Int, right: Int) {
+            // a * b -> b * a
+            same(id, node(Op.MUL, right, left))
+            // a * 1 -> a, a * 0 -> 0
+            when (constant(right)) {
+                1 -> same(id, left)
+                0 -> same(id, graph.number(0))
+            }
+            for (inner in nodes(left, Op.MUL)) {
+                graph.checkBudget()
+                // (a * b) * c -> a * (b * c)
+                same(id, node(Op.MUL, inner.children[0], node(Op.MUL, inner.children[1], right)))
+            }
+            for (sum in nodes(right, Op.ADD) + nodes(right, Op.SUB)) {
+                graph.checkBudget()
+                // a * (b OP c) -> (a * b) OP (a * c)
+                same(id, node(sum.op, node(Op.MUL, left, sum.children[0]), node(Op.MUL, left, sum.children[1])))
+            }
+        }
+
+        private fun eq(id: Int, left: Int, right: Int) {
+            // a = b -> b = a
+            same(id, node(Op.EQ, right, left))
+            // a = a -> true
+            if (left == right) same(id, graph.bool(true))
+            val value = constant(right) ?: return
+            // (a + c1) = c2 -> a = c2 - c1, addition is bijection even with overflow
+            for (sum in nodes(left, Op.ADD)) {
+                constant(sum.children[1])?.let { same(id, node(Op.EQ, sum.children[0], graph.number(value - it))) }
+            }
+            for (difference in nodes(left, Op.SUB)) {
+                constant(difference.children[1])?.let { same(id, node(Op.EQ, difference.children[0], graph.number(value + it))) }
+            }
+        }
+
+        private fun logic(id: Int, op: Op, left: Int, right: Int) {
+            // a LOG_OP b -> b LOG_OP a
+            same(id, node(op, right, left))
+            // a LOG_OP a -> a
+            if (left == right) same(id, left)
+            // true & a -> a, false | a -> a
+            val neutral = if (op == Op.AND) 1 else 0
+            if (constant(left) == neutral) same(id, right)
+            for (inner in nodes(left, op)) {
+                // (a LOG_OP b) LOG_OP c -> a LOG_OP (b LOG_OP c)
+                same(id, node(op, inner.children[0], node(op, inner.children[1], right)))
+            }
+        }
+
+        /**
+         * Adds constants to classes with known values, Horner forms to classes with polynomials
+         * and minimal interval expressions to logic classes, which compare element with constants only.
+         */
+        fun fold() {
+            for (id in graph.classIds) {
+                val eClass = graph.eClass(id)
+                val constant = eClass.constant
+                if (constant != null) {
+                    same(id, if (eClass.logic) graph.bool(constant == 1) else graph.number(constant))
+                    continue
+                }
+                eClass.polynomial?.toArithmExpr()?.let { same(id, graph.add(it)) }
+                eClass.intervals?.toLogicExpr()?.let { same(id, graph.add(it)) }
+            }
+        }
+    }
+
+    /**
+     * Chooses the cheapest node of every class.
+     */
+    private class Extractor(private val graph: EGraph) {
+
+        private val best = HashMap<Int, Pair<Long, ENode>>()
+
+        private val extracted = HashMap<Int, AstNode>()
+
+        init {
+            do {
+                var changed = false
+                for (id in graph.classIds) {
+                    for (node in graph.eClass(id).nodes) {
+                        val cost = cost(node) ?: continue
+                        val current = best[id]
+                        if (current == null || cost < current.first) {
+                            best[id] = cost to node
+                            changed = true
+                        }
+                    }
+                }
+            } while (changed)
+        }
+
+        private fun cost(node: ENode): Long? {
+            var cost = ownCost(node) ?: return null
+            for (child in node.children) {
+                cost += best[graph.find(child)]?.first ?: return null
+            }
+            return cost
+        }
+
+        /**
+         * Builds the cheapest expression of class, equal subtrees are shared.
+         */
+        fun extract(id: Int): AstNode {
+            val root = graph.find(id)
+            extracted[root]?.let { return it }
+            val node = best.getValue(root).second
+            val children = node.children.map { extract(it) }
+            val expr = when (node.op) {
+                Op.ELEMENT -> Element
+                Op.REFERENCE -> Reference(node.name!!)
+                Op.NUMBER -> if (node.value < 0) MinusExpr(NumberExpr((-node.value).toString())) else NumberExpr(node.value.toString())
+                Op.BOOL -> if (node.value == 1) CallOptimizer.trueCmp() else CallOptimizer.falseCmp()
+                Op.ADD -> BinArithmExpr(children[0] as ArithmExpr, ArithmType.PLUS, children[1] as ArithmExpr)
+                Op.SUB -> BinArithmExpr(children[0] as ArithmExpr, ArithmType.MINUS, children[1] as ArithmExpr)
+                Op.MUL -> BinArithmExpr(children[0] as ArithmExpr, ArithmType.MULT, children[1] as ArithmExpr)
+                Op.MORE -> CmpExpr(children[0] as ArithmExpr, CmpType.MORE, children[1] as ArithmExpr)
+                Op.LESS -> CmpExpr(children[0] as ArithmExpr, CmpType.LESS, children[1] as ArithmExpr)
+                Op.EQ -> CmpExpr(children[0] as ArithmExpr, CmpType.EQ, children[1] as ArithmExpr)
+                Op.AND -> BinLogicExpr(children[0] as LogicExpr, LogicType.AND, children[1] as LogicExpr)
+                Op.OR -> BinLogicExpr(children[0] as LogicExpr, LogicType.OR, children[1] as LogicExpr)
+            }
+            extracted[root] = expr
+            return expr
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package ru.nsu.fit.jbr.simplifier.transformation
+
+/**
+ * 128-bit structural fingerprint of AST node, see [Canonicalizer.fingerprint].
+ * Fingerprints are stable between runs, so they can be stored with cached plans.
+ */
+data class Fingerprint(val high: Long, val low: Long) : Comparable<Fingerprint> {
+
+    override fun compareTo(other: Fingerprint): Int {
+        val byHigh = high.compareTo(other.high)
+        return if (byHigh != 0) byHigh else low.compareTo(other.low)
+    }
+
+    override fun toString(): String = String.format("%016x%016x", high, low)
+
+    companion object {
+        // primes of xxHash64
+        private const val PRIME_1 = -0x61c8864e7a143579L
+        private const val PRIME_2 = -0x3d4d51c2d82b14b1L
+        private const val PRIME_3 = 0x165667b19e3779f9L
+        private const val PRIME_4 = -0x7a1435883d4d519dL
+        private const val PRIME_5 = 0x27d4eb2f165667c5L
+
+        /**
+         * Fingerprint of node with given tag, children fingerprints and value.
+         * Every argument is mixed with own multiplier, so order of children matters.
+         */
+        fun of(tag: Int, value: Long, vararg children: Fingerprint): Fingerprint {
+            var high = mix(PRIME_1 + tag)
+            var low = mix(PRIME_2 - tag)
+            high = mix(high xor value * PRIME_3)
+            low = mix(low xor value * PRIME_4)
+            for (child in children) {
+                high = mix(high * PRIME_5 xor child.high)
+                low = mix(low * PRIME_1 xor child.low xor java.lang.Long.rotateLeft(child.high, 17))
+            }
+            return Fingerprint(high, low)
+        }
+
+        /**
+         * Finalization step of MurmurHash3.
+         */
+        private fun mix(value: Long): Long {
+            var h = value
+            h = h xor (h ushr 33)
+            h *= -0xae502812aa7333L
+            h = h xor (h ushr 33)
+            h *= -0x3b314601e57a13adL
+            return h xor (h ushr 33)
+        }
+    }
+}
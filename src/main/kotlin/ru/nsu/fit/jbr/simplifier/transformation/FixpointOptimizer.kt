@@ -0,0 +1,69 @@
+package ru.nsu.fit.jbr.simplifier.transformation
+
+import ru.nsu.fit.jbr.simplifier.ast.CallChain
+
+/**
+ * Runs [CallOptimizer] passes until chain stops changing or [maxIterations] passes are done.
+ * Rewrites create new nodes, which may be simplified further by the next pass.
+ * Nodes are immutable, so only new nodes and their ancestors are dirty: passes share memo of optimizer,
+ * so every node optimized by previous passes, including stable ones, is not traversed again.
+ * So every pass costs proportionally to the part of chain changed by previous one.
+ */
+class FixpointOptimizer(private val maxIterations: Int = 10) : ChainOptimizer {
+
+    init {
+        require(maxIterations > 0) { "Iteration count must be positive: $maxIterations" }
+    }
+
+    class Pass(
+        val iteration: Int,
+        val nanos: Long,
+        /**
+         * Count of optimized nodes, nodes found in memo are skipped.
+         */
+        val visitedNodes: Long,
+        val memoHits: Long,
+        val changed: Boolean
+    )
+
+    /**
+     * Passes of last [optimize] call.
+     */
+    var passes: List<Pass> = emptyList()
+        private set
+
+    /**
+     * True if last [optimize] call reached chain, which is not changed by optimizer.
+     */
+    var converged = false
+        private set
+
+    override fun optimize(chain: CallChain): CallChain {
+        val optimizer = CallOptimizer(retainMemo = true)
+        val passes = ArrayList<Pass>()
+        converged = false
+
+        var current = optimizer.canonical(chain)
+        while (passes.size < maxIterations) {
+            val start = System.nanoTime()
+            val visitedBefore = optimizer.visitedCount
+            val hitsBefore = optimizer.memoHits
+            val optimized = optimizer.optimize(current)
+            val changed = optimized != current
+            passes.add(Pass(
+                passes.size + 1,
+                System.nanoTime() - start,
+                optimizer.visitedCount - visitedBefore,
+                optimizer.memoHits - hitsBefore,
+                changed
+            ))
+            current = optimized
+            if (!changed) {
+                converged = true
+                break
+            }
+        }
+        this.passes = passes
+        return current
+    }
+}
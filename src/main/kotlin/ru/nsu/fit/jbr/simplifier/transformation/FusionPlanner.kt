@@ -0,0 +1,205 @@
+package ru.nsu.fit.jbr.simplifier.transformation
+
+import ru.nsu.fit.jbr.simplifier.ast.*
+import java.util.*
+
+/**
+ * Chooses partial fusion of call chain: chain is cut before some filters and every segment is fused
+ * to filter and map separately, with let calls for names used by following segments.
+ *
+ * Full fusion inlines maps into the filter, and subexpressions shared by filter and map are bound by lets
+ * before the filter, so they are evaluated for every element, even for ones dropped by the first filter.
+ * Cost of segment is count of distinct operations evaluated per element (each call counts as one operation),
+ * assuming that every filter passes [selectivity] of elements independently.
+ * Cut positions are chosen by dynamic programming over segments, ties are resolved by emitted size.
+ */
+class FusionPlanner(
+    private val selectivity: Double = 0.5,
+    /**
+     * Maximal count of considered cut positions, chains with more candidates are cut at evenly chosen ones.
+     */
+    private val maxCuts: Int = 32
+) {
+
+    init {
+        require(selectivity > 0 && selectivity <= 1) { "Selectivity should be in (0, 1]: $selectivity" }
+        require(maxCuts >= 0) { "Cut count should not be negative: $maxCuts" }
+    }
+
+    /**
+     * Estimated operations per input element and count of distinct nodes of emitted chain.
+     */
+    class Cost(val operations: Double, val size: Int) : Comparable<Cost> {
+        operator fun plus(other: Cost) = Cost(operations + other.operations, size + other.size)
+
+        override fun compareTo(other: Cost): Int =
+            if (operations != other.operations) operations.compareTo(other.operations) else size.compareTo(other.size)
+
+        override fun toString(): String = String.format(Locale.ROOT, "%.2f operations per element, size %d", operations, size)
+    }
+
+    class Plan(
+        /**
+         * Chain of fused segments, single segment equals result of [ru.nsu.fit.jbr.simplifier.simplifyCallChain].
+         */
+        val chain: CallChain,
+        val segments: Int,
+        val cost: Cost,
+        val fullFusionCost: Cost
+    ) {
+        override fun toString(): String =
+            if (segments == 1) "full fusion: $cost" else "$segments segments: $cost, full fusion: $fullFusionCost"
+    }
+
+    private class Segment(val calls: List<Call>, val cost: Cost)
+
+    fun plan(chain: CallChain): Plan {
+        val calls = chain.calls
+        val factory = AstFactory()
+        val cuts = cutPositions(calls)
+        val referencedAfter = referencedAfter(calls)
+
+        // passed[i] - part of elements reaching call i
+        val passed = DoubleArray(calls.size + 1)
+        passed[0] = 1.0
+        for (i in calls.indices) {
+            passed[i + 1] = if (calls[i] is FilterCall) passed[i] * selectivity else passed[i]
+        }
+
+        // best[j] - cheapest fusion of calls before cuts[j], made of segments ending at cuts
+        val best = arrayOfNulls<List<Segment>>(cuts.size)
+        val bestCost = arrayOfNulls<Cost>(cuts.size)
+        best[0] = emptyList()
+        bestCost[0] = Cost(0.0, 0)
+        var fullFusion: Segment? = null
+        for (i in 0 until cuts.size - 1) {
+            val fuser = ChainFuser(factory)
+            for (j in i + 1 until cuts.size) {
+                for (k in cuts[j - 1] until cuts[j]) {
+                    calls[k].accept(fuser)
+                }
+                val segment = segment(fuser.summary(), referencedAfter[cuts[j]], passed[cuts[i]], passed[cuts[j]], factory)
+                    ?: continue
+                if (i == 0 && j == cuts.size - 1) fullFusion = segment
+
+                val cost = bestCost[i]!! + segment.cost
+                if (bestCost[j] == null || cost < bestCost[j]!!) {
+                    bestCost[j] = cost
+                    best[j] = best[i]!! + segment
+                }
+            }
+        }
+
+        val last = cuts.size - 1
+        val segments = best[last]!!
+        return Plan(CallChain(segments.flatMap { it.calls }), segments.size, bestCost[last]!!, fullFusion!!.cost)
+    }
+
+    /**
+     * Start of chain, positions of filters following other calls, and end of chain.
+     */
+    private fun cutPositions(calls: List<Call>): List<Int> {
+        val candidates = (1 until calls.size).filter { calls[it] is FilterCall && calls[it - 1] !is FilterCall }
+        val step = if (candidates.size <= maxCuts) 1 else (candidates.size + maxCuts - 1) / maxCuts
+        return listOf(0) + candidates.filterIndexed { index, _ -> index % step == 0 } + calls.size
+    }
+
+    /**
+     * Names referenced by calls from every position to the end of chain.
+     */
+    private fun referencedAfter(calls: List<Call>): List<Set<String>> {
+        val result = ArrayList<Set<String>>(calls.size + 1)
+        var names = emptySet<String>()
+        result.add(names)
+        for (i in calls.indices.reversed()) {
+            val collector = ReferenceCollector()
+            calls[i].accept(collector)
+            if (collector.names.isNotEmpty()) names = names + collector.names
+            result.add(names)
+        }
+        result.reverse()
+        return result
+    }
+
+    /**
+     * Let calls for names used later, then filter and map of segment.
+     * Lets and filter are evaluated for elements entering segment, map - for elements passing the filter.
+     * Returns null if segment reads name bound by previous segments and binds it again,
+     * as emitted let would hide the previous value from the rest of segment.
+     * Segments starting the chain read no such names, so there is always a plan.
+     */
+    private fun segment(
+        summary: ChainSummary,
+        usedLater: Set<String>,
+        entering: Double,
+        passing: Double,
+        factory: AstFactory
+    ): Segment? {
+        val lets = summary.bindings.filterKeys { it in usedLater }.map { (name, expr) -> LetCall(name, expr) }
+        val fused = summary.toCallChain(factory)
+        val filter = fused.calls[0] as FilterCall
+        val map = fused.calls[1] as MapCall
+
+        if (lets.isNotEmpty()) {
+            val names = referencedNames(lets.map { it.expr } + filter.expr + map.expr)
+            if (lets.any { it.name in names }) return null
+        }
+
+        val counted = Collections.newSetFromMap(IdentityHashMap<AstNode, Boolean>())
+        val before = lets.sumBy { countOperations(it.expr, counted) } + countOperations(filter.expr, counted)
+        val after = countOperations(map.expr, counted)
+        val operations = entering * (before + lets.size + 1) + passing * (after + 1)
+
+        val calls = lets + listOf(filter, map)
+        return Segment(calls, Cost(operations, counted.size + calls.size))
+    }
+
+    /**
+     * Counts operations of expression not counted yet, equal subtrees are computed once after their elimination.
+     */
+    private fun countOperations(root: AstNode, counted: MutableSet<AstNode>): Int {
+        var count = 0
+        val stack = ArrayDeque<AstNode>()
+        stack.push(root)
+        while (stack.isNotEmpty()) {
+            val node = stack.pop()
+            if (!counted.add(node)) continue
+            when (node) {
+                is BinLogicExpr -> { stack.push(node.left); stack.push(node.right) }
+                is CmpExpr -> { stack.push(node.left); stack.push(node.right) }
+                is BinArithmExpr -> { stack.push(node.left); stack.push(node.right) }
+                else -> continue
+            }
+            count++
+        }
+        return count
+    }
+
+    /**
+     * Names referenced by expressions, shared subtrees are visited once.
+     */
+    private fun referencedNames(roots: List<AstNode>): Set<String> {
+        val names = HashSet<String>()
+        val visited = Collections.newSetFromMap(IdentityHashMap<AstNode, Boolean>())
+        val stack = ArrayDeque<AstNode>(roots)
+        while (stack.isNotEmpty()) {
+            val node = stack.pop()
+            if (!visited.add(node)) continue
+            when (node) {
+                is BinLogicExpr -> { stack.push(node.left); stack.push(node.right) }
+                is CmpExpr -> { stack.push(node.left); stack.push(node.right) }
+                is BinArithmExpr -> { stack.push(node.left); stack.push(node.right) }
+                is Reference -> names.add(node.name)
+            }
+        }
+        return names
+    }
+
+    private class ReferenceCollector : UnitVisitor {
+        val names = HashSet<String>()
+
+        override fun visit(node: Reference) {
+            names.add(node.name)
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package ru.nsu.fit.jbr.simplifier.transformation
+
+import ru.nsu.fit.jbr.simplifier.ast.*
+
+/**
+ * Set of integers as sorted disjoint intervals [lower(i), upper(i)].
+ * Neighbouring intervals are separated by at least one missing integer,
+ * so equal sets always have equal representation.
+ * Used for exact merging of filters, which compare element with constants only.
+ */
+class IntervalSet private constructor(
+    /**
+     * Lower and upper bounds of intervals, both inclusive.
+     */
+    private val bounds: IntArray
+) {
+
+    companion object {
+        val EMPTY = IntervalSet(IntArray(0))
+
+        val ALL = IntervalSet(intArrayOf(Int.MIN_VALUE, Int.MAX_VALUE))
+
+        fun range(from: Int, to: Int): IntervalSet = if (from > to) EMPTY else IntervalSet(intArrayOf(from, to))
+
+        /**
+         * Set of elements satisfying (e CMP_OP c).
+         */
+        fun of(type: CmpType, value: Int): IntervalSet = when (type) {
+            CmpType.MORE -> if (value == Int.MAX_VALUE) EMPTY else range(value + 1, Int.MAX_VALUE)
+            CmpType.LESS -> if (value == Int.MIN_VALUE) EMPTY else range(Int.MIN_VALUE, value - 1)
+            CmpType.EQ -> range(value, value)
+        }
+
+        /**
+         * Set of elements satisfying expression,
+         * or null if expression has compare operations other than (e CMP_OP c), (c CMP_OP e) or (c CMP_OP c).
+         */
+        fun of(expr: LogicExpr): IntervalSet? = when (expr) {
+            is CmpExpr -> ofCmp(expr)
+            is BinLogicExpr -> {
+                val left = of(expr.left)
+                val right = if (left == null) null else of(expr.right)
+                if (left == null || right == null) null else when (expr.type) {
+                    LogicType.AND -> left.intersect(right)
+                    LogicType.OR -> left.union(right)
+                }
+            }
+        }
+
+        private fun ofCmp(expr: CmpExpr): IntervalSet? {
+            val left = expr.left
+            val right = expr.right
+            return when {
+                left is Element && right is ConstExpr -> of(expr.type, constValue(right))
+                left is ConstExpr && right is Element -> of(expr.type.reversed(), constValue(left))
+                left is ConstExpr && right is ConstExpr -> {
+                    val leftVal = constValue(left)
+                    val rightVal = constValue(right)
+                    val result = when (expr.type) {
+                        CmpType.MORE -> leftVal > rightVal
+                        CmpType.LESS -> leftVal < rightVal
+                        CmpType.EQ -> leftVal == rightVal
+                    }
+                    if (result) ALL else EMPTY
+                }
+                else -> null
+            }
+        }
+
+        /**
+         * Checks from <= value <= to with single comparison: value - from is compared with to - from as unsigned.
+         */
+        fun inRange(value: Int, from: Int, to: Int): Boolean =
+            (value - from) xor Int.MIN_VALUE <= (to - from) xor Int.MIN_VALUE
+
+        private fun constValue(expr: ConstExpr): Int = when (expr) {
+            is NumberExpr -> expr.value.toInt()
+            is MinusExpr -> -expr.number.value.toInt()
+        }
+
+        /**
+         * Count of compare operations in expression.
+         */
+        fun cmpCount(expr: LogicExpr): Int = when (expr) {
+            is CmpExpr -> 1
+            is BinLogicExpr -> cmpCount(expr.left) + cmpCount(expr.right)
+        }
+    }
+
+    val intervalCount: Int
+        get() = bounds.size / 2
+
+    fun lower(index: Int): Int = bounds[2 * index]
+
+    fun upper(index: Int): Int = bounds[2 * index + 1]
+
+    fun isEmpty(): Boolean = bounds.isEmpty()
+
+    fun isAll(): Boolean = this == ALL
+
+    fun union(other: IntervalSet): IntervalSet {
+        val result = Builder(bounds.size + other.bounds.size)
+        var i = 0
+        var j = 0
+        while (i < intervalCount || j < other.intervalCount) {
+            if (j == other.intervalCount || i < intervalCount && lower(i) <= other.lower(j)) {
+                result.add(lower(i), upper(i))
+                i++
+            } else {
+                result.add(other.lower(j), other.upper(j))
+                j++
+            }
+        }
+        return result.build()
+    }
+
+    fun intersect(other: IntervalSet): IntervalSet {
+        val result = Builder(bounds.size + other.bounds.size)
+        var i = 0
+        var j = 0
+        while (i < intervalCount && j < other.intervalCount) {
+            val from = maxOf(lower(i), other.lower(j))
+            val to = minOf(upper(i), other.upper(j))
+            if (from <= to) {
+                result.add(from, to)
+            }
+            if (upper(i) < other.upper(j)) i++ else j++
+        }
+        return result.build()
+    }
+
+    fun complement(): IntervalSet {
+        val result = Builder(bounds.size + 2)
+        var from = Int.MIN_VALUE.toLong()
+        for (i in 0 until intervalCount) {
+            if (lower(i) > from) {
+                result.add(from.toInt(), lower(i) - 1)
+            }
+            from = upper(i) + 1L
+        }
+        if (from <= Int.MAX_VALUE) {
+            result.add(from.toInt(), Int.MAX_VALUE)
+        }
+        return result.build()
+    }
+
+    /**
+     * Checks if value belongs to set by binary search over lower bounds.
+     */
+    operator fun contains(value: Int): Boolean {
+        var low = 0
+        var high = intervalCount - 1
+        // index of last interval with lower bound <= value
+        var found = -1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            if (lower(mid) <= value) {
+                found = mid
+                low = mid + 1
+            } else {
+                high = mid - 1
+            }
+        }
+        return found >= 0 && value <= upper(found)
+    }
+
+    /**
+     * Builds expression with minimal count of compare operations:
+     * either union of intervals, or intersection of conditions to be outside of missing intervals.
+     * Returns null if expression needs constant -2147483648, which can't be written.
+     */
+    fun toLogicExpr(): LogicExpr? {
+        if (isEmpty()) return CallOptimizer.falseCmp()
+        if (isAll()) return CallOptimizer.trueCmp()
+
+        val union = join(LogicType.OR, (0 until intervalCount).map { inside(lower(it), upper(it)) })
+        val missing = complement()
+        val intersection = join(LogicType.AND, (0 until missing.intervalCount).map {
+            outside(missing.lower(it), missing.upper(it))
+        })
+        return when {
+            union == null -> intersection
+            intersection == null -> union
+            cmpCount(intersection) < cmpCount(union) -> intersection
+            else -> union
+        }
+    }
+
+    /**
+     * from <= e <= to
+     */
+    private fun inside(from: Int, to: Int): LogicExpr? = when {
+        from == to -> cmp(CmpType.EQ, from)
+        from == Int.MIN_VALUE -> cmp(CmpType.LESS, to + 1)
+        to == Int.MAX_VALUE -> cmp(CmpType.MORE, from - 1)
+        else -> both(LogicType.AND, cmp(CmpType.MORE, from - 1), cmp(CmpType.LESS, to + 1))
+    }
+
+    /**
+     * e < from or e > to
+     */
+    private fun outside(from: Int, to: Int): LogicExpr? = when {
+        from == Int.MIN_VALUE -> cmp(CmpType.MORE, to)
+        to == Int.MAX_VALUE -> cmp(CmpType.LESS, from)
+        else -> both(LogicType.OR, cmp(CmpType.LESS, from), cmp(CmpType.MORE, to))
+    }
+
+    private fun cmp(type: CmpType, value: Int): CmpExpr? = when {
+        value == Int.MIN_VALUE -> null
+        value < 0 -> CmpExpr(Element, type, MinusExpr(NumberExpr((-value).toString())))
+        else -> CmpExpr(Element, type, NumberExpr(value.toString()))
+    }
+
+    private fun both(type: LogicType, left: LogicExpr?, right: LogicExpr?): LogicExpr? =
+        if (left == null || right == null) null else BinLogicExpr(left, type, right)
+
+    private fun join(type: LogicType, operands: List<LogicExpr?>): LogicExpr? =
+        operands.reduce { acc, expr -> both(type, acc, expr) }
+
+    override fun equals(other: Any?): Boolean = other is IntervalSet && bounds.contentEquals(other.bounds)
+
+    override fun hashCode(): Int = bounds.contentHashCode()
+
+    override fun toString(): String =
+        (0 until intervalCount).joinToString(" U ", "{", "}") { "[${lower(it)}, ${upper(it)}]" }
+
+    /**
+     * Appends intervals in order of lower bounds, merging overlapping and adjacent ones.
+     */
+    private class Builder(capacity: Int) {
+        private val bounds = IntArray(capacity)
+
+        private var size = 0
+
+        fun add(from: Int, to: Int) {
+            if (size > 0 && from.toLong() <= bounds[size - 1] + 1L) {
+                bounds[size - 1] = maxOf(bounds[size - 1], to)
+            } else {
+                bounds[size++] = from
+                bounds[size++] = to
+            }
+        }
+
+        fun build(): IntervalSet = if (size == 0) EMPTY else IntervalSet(bounds.copyOf(size))
+    }
+}
@@ -0,0 +1,57 @@
+package ru.nsu.fit.jbr.simplifier.transformation
+
+import ru.nsu.fit.jbr.simplifier.ast.AstFactory
+import ru.nsu.fit.jbr.simplifier.ast.CallChain
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveTask
+
+/**
+ * Fuses long call chains on fork/join pool.
+ * Chain is split to segments, every segment is summarized by [ChainFuser],
+ * then summaries are composed by tree reduction, halves of every range are reduced in parallel.
+ * All tasks build nodes by one concurrent factory, so equal subtrees of different segments are shared
+ * and compared by reference.
+ * Result is equal to the result of [ru.nsu.fit.jbr.simplifier.simplifyCallChain].
+ */
+class ParallelChainFuser(
+    private val pool: ForkJoinPool = ForkJoinPool.commonPool(),
+    /**
+     * Count of calls summarized by one task.
+     */
+    private val segmentSize: Int = 1024
+) {
+
+    init {
+        require(segmentSize > 0) { "Segment size should be positive" }
+    }
+
+    fun fuse(chain: CallChain): CallChain {
+        val factory = AstFactory(concurrent = true)
+        val task = SegmentTask(chain, factory, 0, chain.calls.size)
+        val summary = if (chain.calls.size <= segmentSize) task.compute() else pool.invoke(task)
+        return summary.toCallChain(factory)
+    }
+
+    private inner class SegmentTask(
+        private val chain: CallChain,
+        private val factory: AstFactory,
+        private val from: Int,
+        private val to: Int
+    ) : RecursiveTask<ChainSummary>() {
+
+        public override fun compute(): ChainSummary {
+            if (to - from <= segmentSize) {
+                val fuser = ChainFuser(factory)
+                for (i in from until to) {
+                    chain.calls[i].accept(fuser)
+                }
+                return fuser.summary()
+            }
+            val middle = (from + to) ushr 1
+            val right = SegmentTask(chain, factory, middle, to)
+            right.fork()
+            val left = SegmentTask(chain, factory, from, middle).compute()
+            return left.then(right.join(), factory)
+        }
+    }
+}
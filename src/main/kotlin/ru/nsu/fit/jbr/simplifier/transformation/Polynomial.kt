@@ -0,0 +1,207 @@
+package ru.nsu.fit.jbr.simplifier.transformation
+
+import ru.nsu.fit.jbr.simplifier.ast.*
+import java.util.*
+
+/**
+ * Polynomial in element with integer coefficients: sum of coefficients[i] * e^degrees[i].
+ * Only non-zero coefficients are stored, degrees are sorted ascending.
+ * Arithmetic wraps like Int operations, so polynomial gives the same values as expression it was built from.
+ */
+class Polynomial private constructor(
+    private val degrees: IntArray,
+    private val coefficients: IntArray
+) {
+
+    companion object {
+        /**
+         * Polynomials with more terms are not built, expressions sharing subtrees are usually cheaper.
+         */
+        const val MAX_TERMS = 64
+
+        /**
+         * Every odd x satisfies x^(2^30) = 1 modulo 2^32, and every even x satisfies x^32 = 0,
+         * so degrees from 32 on can be reduced modulo 2^30.
+         */
+        private const val DEGREE_PERIOD = 1 shl 30
+
+        private const val PERIOD_START = 32
+
+        val ZERO = Polynomial(IntArray(0), IntArray(0))
+
+        val ELEMENT = Polynomial(intArrayOf(1), intArrayOf(1))
+
+        fun constant(value: Int): Polynomial = if (value == 0) ZERO else Polynomial(intArrayOf(0), intArrayOf(value))
+
+        /**
+         * Polynomial of expression, or null if expression has references or polynomial has too many terms.
+         * Equal subtrees are converted once.
+         */
+        fun of(expr: ArithmExpr): Polynomial? = of(expr, HashMap())
+
+        private fun of(expr: ArithmExpr, converted: MutableMap<ArithmExpr, Polynomial?>): Polynomial? = when (expr) {
+            is Element -> ELEMENT
+            is NumberExpr -> constant(expr.value.toInt())
+            is MinusExpr -> constant(-expr.number.value.toInt())
+            is Reference -> null
+            is BinArithmExpr -> if (converted.containsKey(expr)) converted[expr] else {
+                val left = of(expr.left, converted)
+                val right = if (left == null) null else of(expr.right, converted)
+                val result = if (left == null || right == null) null else when (expr.type) {
+                    ArithmType.PLUS -> left.plus(right)
+                    ArithmType.MINUS -> left.minus(right)
+                    ArithmType.MULT -> left.times(right)
+                }
+                converted[expr] = result
+                result
+            }
+        }
+
+        /**
+         * Count of distinct arithmetic operations in expression, equal subtrees are counted once.
+         */
+        fun operationCount(expr: ArithmExpr): Int {
+            val operations = HashSet<BinArithmExpr>()
+            collectOperations(expr, operations)
+            return operations.size
+        }
+
+        private fun collectOperations(expr: ArithmExpr, operations: MutableSet<BinArithmExpr>) {
+            if (expr is BinArithmExpr && operations.add(expr)) {
+                collectOperations(expr.left, operations)
+                collectOperations(expr.right, operations)
+            }
+        }
+
+        private fun reduceDegree(degree: Long): Int =
+            if (degree < PERIOD_START) degree.toInt()
+            else (PERIOD_START + (degree - PERIOD_START) % DEGREE_PERIOD).toInt()
+
+        /**
+         * x^degree with wrapping multiplication.
+         */
+        private fun power(x: Int, degree: Int): Int {
+            var result = 1
+            var base = x
+            var rest = degree
+            while (rest > 0) {
+                if (rest and 1 == 1) result *= base
+                base *= base
+                rest = rest ushr 1
+            }
+            return result
+        }
+    }
+
+    val termCount: Int
+        get() = degrees.size
+
+    fun degree(index: Int): Int = degrees[index]
+
+    fun coefficient(index: Int): Int = coefficients[index]
+
+    fun plus(other: Polynomial): Polynomial? {
+        val terms = Terms()
+        for (i in degrees.indices) terms.add(degrees[i], coefficients[i])
+        for (i in other.degrees.indices) terms.add(other.degrees[i], other.coefficients[i])
+        return terms.build()
+    }
+
+    fun minus(other: Polynomial): Polynomial? {
+        val terms = Terms()
+        for (i in degrees.indices) terms.add(degrees[i], coefficients[i])
+        for (i in other.degrees.indices) terms.add(other.degrees[i], -other.coefficients[i])
+        return terms.build()
+    }
+
+    fun times(other: Polynomial): Polynomial? {
+        val terms = Terms()
+        for (i in degrees.indices) {
+            for (j in other.degrees.indices) {
+                terms.add(reduceDegree(degrees[i].toLong() + other.degrees[j]), coefficients[i] * other.coefficients[j])
+            }
+        }
+        return terms.build()
+    }
+
+    /**
+     * Evaluates polynomial by Horner scheme over coefficients, gaps between degrees are powered by squaring.
+     */
+    fun evaluate(x: Int): Int {
+        if (degrees.isEmpty()) return 0
+        var result = coefficients[degrees.size - 1]
+        for (i in degrees.size - 2 downTo 0) {
+            result = result * power(x, degrees[i + 1] - degrees[i]) + coefficients[i]
+        }
+        return result * power(x, degrees[0])
+    }
+
+    /**
+     * Builds expression in Horner form: (((c3 * e^g3 + c2) * e^g2 + c1) * e^g1 + c0) * e^g0.
+     * Powers are built by squaring with equal subtrees, so they are computed once after elimination of subexpressions.
+     * Returns null if coefficient -2147483648 is needed, it can't be written.
+     */
+    fun toArithmExpr(): ArithmExpr? {
+        if (coefficients.any { it == Int.MIN_VALUE }) return null
+        if (degrees.isEmpty()) return number(0)
+
+        val last = degrees.size - 1
+        // null means 1, so multiplications by 1 are not written
+        var result: ArithmExpr? = if (coefficients[last] == 1) null else number(coefficients[last])
+        for (i in last - 1 downTo 0) {
+            result = add(multiply(result, power(degrees[i + 1] - degrees[i])), coefficients[i])
+        }
+        return if (degrees[0] == 0) result ?: number(1) else multiply(result, power(degrees[0]))
+    }
+
+    /**
+     * e^degree for degree >= 1.
+     */
+    private fun power(degree: Int): ArithmExpr = when {
+        degree == 1 -> Element
+        degree % 2 == 0 -> {
+            val half = power(degree / 2)
+            BinArithmExpr(half, ArithmType.MULT, half)
+        }
+        else -> BinArithmExpr(power(degree - 1), ArithmType.MULT, Element)
+    }
+
+    private fun multiply(factor: ArithmExpr?, power: ArithmExpr): ArithmExpr = when (factor) {
+        null -> power
+        is ConstExpr -> BinArithmExpr(power, ArithmType.MULT, factor)
+        else -> BinArithmExpr(factor, ArithmType.MULT, power)
+    }
+
+    private fun add(expr: ArithmExpr, value: Int): ArithmExpr = when {
+        value < 0 -> BinArithmExpr(expr, ArithmType.MINUS, NumberExpr((-value).toString()))
+        else -> BinArithmExpr(expr, ArithmType.PLUS, NumberExpr(value.toString()))
+    }
+
+    private fun number(value: Int): ConstExpr =
+        if (value < 0) MinusExpr(NumberExpr((-value).toString())) else NumberExpr(value.toString())
+
+    override fun equals(other: Any?): Boolean = other is Polynomial
+            && degrees.contentEquals(other.degrees) && coefficients.contentEquals(other.coefficients)
+
+    override fun hashCode(): Int = 31 * degrees.contentHashCode() + coefficients.contentHashCode()
+
+    override fun toString(): String =
+        if (degrees.isEmpty()) "0" else degrees.indices.reversed().joinToString(" + ") { "${coefficients[it]}*e^${degrees[it]}" }
+
+    /**
+     * Accumulates terms by degree.
+     */
+    private class Terms {
+        private val byDegree = TreeMap<Int, Int>()
+
+        fun add(degree: Int, coefficient: Int) {
+            byDegree[degree] = (byDegree[degree] ?: 0) + coefficient
+        }
+
+        fun build(): Polynomial? {
+            val terms = byDegree.filter { it.value != 0 }
+            if (terms.size > MAX_TERMS) return null
+            return Polynomial(terms.keys.toIntArray(), terms.values.toIntArray())
+        }
+    }
+}
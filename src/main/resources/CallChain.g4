@@ -2,13 +2,15 @@ grammar CallChain;
 
 NUMBER : [0-9]+;
 ELEMENT: 'element';
+NAME: [a-z_][a-z0-9_]*;
 OPERATION: '+' | '-' | '*' | '>' | '<' | '=' | '&' | '|';
 
 minusExpr: '-'NUMBER;
 constExpr : NUMBER | minusExpr;
-binExpr : '(' expr OPERATION expr ')';
-expr: ELEMENT | constExpr | binExpr;
+binExpr : '(' expr op=(OPERATION | '-') expr ')';
+expr: ELEMENT | NAME | constExpr | binExpr;
 mapCall : 'map{' expr '}';
 filterCall : 'filter{' expr '}';
-call : mapCall | filterCall;
-callChain : call ('%>%' call)*;
+letCall : 'let{' NAME ':=' expr '}';
+call : mapCall | filterCall | letCall;
+callChain : call ('%>%' call)* EOF;
@@ -1,11 +1,44 @@
 import org.antlr.v4.runtime.misc.ParseCancellationException
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
 import org.junit.jupiter.api.Assertions.assertIterableEquals
+import org.junit.jupiter.api.Assertions.assertNotEquals
+import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.assertThrows
-import ru.nsu.fit.jbr.simplifier.ast.IncorrectTypeCancellationException
+import ru.nsu.fit.jbr.simplifier.BatchTransformer
+import ru.nsu.fit.jbr.simplifier.ChainTransformer
+import ru.nsu.fit.jbr.simplifier.TransformCache
+import ru.nsu.fit.jbr.simplifier.TransformClient
+import ru.nsu.fit.jbr.simplifier.TransformProtocol
+import ru.nsu.fit.jbr.simplifier.TransformServer
+import ru.nsu.fit.jbr.simplifier.antlrinterop.AntlrParsers
+import ru.nsu.fit.jbr.simplifier.ast.*
 import ru.nsu.fit.jbr.simplifier.generation.CallChainEvaluator
 import ru.nsu.fit.jbr.simplifier.getAst
+import ru.nsu.fit.jbr.simplifier.getAstWithAntlr
+import ru.nsu.fit.jbr.simplifier.parsing.StreamingChainParser
+import ru.nsu.fit.jbr.simplifier.simplifyCallChain
+import ru.nsu.fit.jbr.simplifier.transformation.CallOptimizer
+import ru.nsu.fit.jbr.simplifier.transformation.Canonicalizer
+import ru.nsu.fit.jbr.simplifier.transformation.EGraphOptimizer
+import ru.nsu.fit.jbr.simplifier.transformation.FixpointOptimizer
+import ru.nsu.fit.jbr.simplifier.transformation.FusionPlanner
+import ru.nsu.fit.jbr.simplifier.transformation.IntervalSet
+import ru.nsu.fit.jbr.simplifier.transformation.ParallelChainFuser
+import ru.nsu.fit.jbr.simplifier.transformation.Polynomial
 import ru.nsu.fit.jbr.simplifier.transform
+import java.io.BufferedReader
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.Reader
+import java.io.StringReader
+import java.io.StringWriter
+import java.net.BindException
+import java.nio.channels.Channels
+import java.nio.file.Files
+import java.util.*
+import java.util.concurrent.CancellationException
 
 class CallChainTests {
 
@@ -14,7 +47,9 @@ class CallChainTests {
         "map(element+1)",
         "filter{(eleent>3)}",
         "map{element}%>filter{(1=1)}",
-        "map{(element-+3)}"
+        "map{(element-+3)}",
+        "map{(value+1)}",
+        "map{(t+1)}%>%let{t:=element}"
     )
 
     private val typeErrorCases = listOf(
@@ -22,7 +57,8 @@ class CallChainTests {
         "map{((element>1)|(3<2))}",
         "filter{element}",
         "filter{((element>3)<4)}",
-        "filter{((element>1)|(3+2))}"
+        "filter{((element>1)|(3+2))}",
+        "let{t:=(element>3)}"
     )
 
     private val commonCases = listOf(
@@ -30,9 +66,40 @@ class CallChainTests {
         "map{(element+10)}%>%filter{(element>10)}%>%map{(element*element)}",
         "filter{(element>0)}%>%filter{(element<0)}%>%map{(element*element)}",
         "filter{(element<30)}%>%map{(element+-10)}%>%filter{(element>10)}%>%map{(element*element)}",
-        "filter{(element<-3)}%>%map{(element+10)}%>%filter{(element>10)}%>%map{(element*element)}"
+        "filter{(element<-3)}%>%map{(element+10)}%>%filter{(element>10)}%>%map{(element*element)}",
+        "map{(element-3)}%>%filter{(element>-5)}%>%map{(element*(element-1))}",
+        "let{t:=(element*2)}%>%map{(t+element)}%>%filter{(t>element)}%>%let{t:=(t*element)}%>%map{(t-element)}",
+        "map{((element-2)*(element+3))}%>%map{((element*2)*(element+3))}",
+        "map{(5-(element+2))}%>%map{(3-(element-3))}",
+        "filter{((3-element)>1)}%>%filter{(-5<(10-element))}",
+        "filter{((2-(element+2))>element)}%>%map{(-1-(element*2))}",
+        "filter{(((1*element)*(2-element))>-3)}%>%filter{(((element+1)*(3-element))>-20)}%>%map{((2-element)*(element*element))}"
     )
 
+    // text after the last call, rejected since the grammar requires EOF
+    private val trailingTextCases = listOf(
+        "map{element}map{element}",
+        "filter{(element>1)}%>%map{element} "
+    )
+
+    private val parserCases = listOf(
+        "map{element}}",
+        "map{element}%>%",
+        "mapx{element}",
+        "map{elements}",
+        "map{ element}",
+        "map{007}",
+        "map{(element--3)}",
+        "let{element:=1}",
+        "let{map:=1}%>%map{map}",
+        "let{t_1:=(element*2)}%>%filter{((t_1>3)|(t_1<-3))}",
+        "filter{(1=1)}%>%%>%map{element}",
+        "map{(element&element)}",
+        "map{(element>3)}%>%map{t}",
+        "map{t}%>%map{(element>3)}",
+        "filter{((element>3)<4)}%>%map("
+    ) + trailingTextCases
+
     private val testList = (-100..100).toList()
 
     @Test
@@ -63,6 +130,414 @@ class CallChainTests {
         }
     }
 
+    @Test
+    fun testParserMatchesAntlr() {
+        for (case in syntaxErrorCases + typeErrorCases + commonCases + parserCases) {
+            val expected = try {
+                getAstWithAntlr(case)
+            } catch (ex: CancellationException) {
+                ex.javaClass
+            }
+            val actual = try {
+                getAst(case)
+            } catch (ex: CancellationException) {
+                ex.javaClass
+            }
+            assertEquals(expected, actual, case)
+        }
+    }
+
+    @Test
+    fun testStreamingParser() {
+        // small buffer, so pipes are split between reads
+        val parser = StreamingChainParser(bufferSize = 2)
+        for (case in syntaxErrorCases + typeErrorCases + commonCases + parserCases) {
+            val expected = try {
+                simplifyCallChain(getAst(case))
+            } catch (ex: CancellationException) {
+                ex.javaClass to ex.message
+            }
+            val actual = try {
+                parser.fuse(StringReader(case.replace("%>%", "%>%\n")))
+            } catch (ex: CancellationException) {
+                ex.javaClass to ex.message
+            }
+            assertEquals(expected, actual, case)
+        }
+        // positions of syntax errors are positions in the whole chain
+        val error = assertThrows<ParseCancellationException> { parser.fuse(StringReader("map{(element>1)}%>%\nmap{")) }
+        assertTrue(error.message!!.startsWith("Unexpected token at 23"), error.message)
+
+        // source is generated while it is read and never kept as a whole
+        val calls = 10_000
+        val generated = object : Reader() {
+            private var index = 0
+            private var pending = ""
+
+            override fun read(buffer: CharArray, offset: Int, length: Int): Int {
+                if (pending.length == 0) {
+                    if (index == calls) return -1
+                    pending = (if (index == 0) "" else "%>%") + if (index % 2 == 0) "map{(element+$index)}" else "filter{(element>$index)}"
+                    index++
+                }
+                val count = minOf(length, pending.length)
+                pending.toCharArray(buffer, offset, 0, count)
+                pending = pending.substring(count)
+                return count
+            }
+
+            override fun close() {}
+        }
+        val fused = parser.fuse(generated)
+        assertEquals(calls, parser.callCount)
+        // element, and sum and number for every map
+        assertEquals(calls + 1, countDistinctNodes((fused.calls[1] as MapCall).expr))
+    }
+
+    @Test
+    fun testAntlrParsingStages() {
+        val statistics = AntlrParsers.statistics
+        val sll = statistics.sllParses.get()
+        val failed = statistics.failedParses.get()
+
+        commonCases.forEach { getAstWithAntlr(it) }
+        assertEquals(sll + commonCases.size, statistics.sllParses.get())
+
+        // other syntax error cases contain undefined names, which are checked after parsing
+        val grammarErrorCases = listOf("", "map(element+1)", "map{element}%>filter{(1=1)}", "map{(element-+3)}")
+        grammarErrorCases.forEach { assertThrows<ParseCancellationException> { getAstWithAntlr(it) } }
+        assertEquals(failed + grammarErrorCases.size, statistics.failedParses.get())
+    }
+
+    @Test
+    fun testTransformCache() {
+        val cache = TransformCache(maxEntries = 2)
+        val transformer = ChainTransformer()
+        val frequent = commonCases[0]
+        repeat(5) {
+            assertEquals(transform(frequent, true), cache.transform(frequent, true, transformer))
+        }
+        assertEquals(1, cache.misses)
+        assertEquals(4, cache.hits)
+
+        assertEquals("SYNTAX ERROR", cache.transformOrError(syntaxErrorCases[1], true, transformer))
+        assertThrows<ParseCancellationException> { cache.transform(syntaxErrorCases[1], true, transformer) }
+        assertThrows<IncorrectTypeCancellationException> { cache.transform(typeErrorCases[0], true, transformer) }
+        assertEquals(2, cache.size)
+
+        for (case in commonCases.drop(1)) {
+            cache.transform(case, false, transformer)
+        }
+        assertEquals(transform(frequent, true), cache.transform(frequent, true, transformer))
+        assertEquals(2, cache.size)
+        assertTrue(cache.rejections > 0)
+    }
+
+    @Test
+    fun testCanonicalFingerprints() {
+        val equivalent = listOf(
+            listOf("filter{(element>3)}", "filter{(3<element)}", "filter{((element+0)>(1+2))}"),
+            listOf("map{((element+1)+2)}", "map{(3+element)}", "map{(element--3)}", "map{((2+element)+001)}"),
+            listOf("map{(element*(element+1))}", "map{((1+element)*element)}"),
+            listOf("filter{((element>1)&((element<9)&(element=4)))}", "filter{(((4=element)&(9>element))&(element>1))}"),
+            listOf("filter{((element>1)|(1=0))}", "filter{((1<element)|(element>1))}"),
+            listOf("let{a:=(element*2)}%>%map{(a+1)}", "let{b:=(2*element)}%>%map{(1+b)}")
+        )
+        val canonicalizer = Canonicalizer()
+        val fingerprints = equivalent.map { group ->
+            val fingerprint = canonicalizer.fingerprint(getAst(group[0]))
+            for (case in group) {
+                assertEquals(fingerprint, canonicalizer.fingerprint(getAst(case)), case)
+            }
+            fingerprint
+        }
+        assertEquals(fingerprints.size, fingerprints.toSet().size)
+
+        // rebound name and the next name get different canonical names
+        val rebinding = "let{t:=element}%>%let{t:=(t+1)}%>%let{u:=(element*2)}%>%map{(t+u)}"
+        assertNotEquals(
+            canonicalizer.fingerprint(getAst(rebinding)),
+            canonicalizer.fingerprint(getAst("let{t:=element}%>%let{t:=(t+1)}%>%let{u:=(element*2)}%>%map{(u+u)}"))
+        )
+
+        for (case in commonCases + equivalent.flatten() + rebinding) {
+            val canonical = canonicalizer.canonicalize(getAst(case))
+            assertEquals(canonical, canonicalizer.canonicalize(canonical), case)
+            for (element in testList + listOf(Int.MIN_VALUE, Int.MAX_VALUE)) {
+                val expected = CallChainEvaluator(element)
+                getAst(case).accept(expected)
+                val actual = CallChainEvaluator(element)
+                canonical.accept(actual)
+                assertEquals(expected.result, actual.result, case)
+            }
+        }
+    }
+
+    @Test
+    fun testIntervalFilters() {
+        assertEquals(
+            "filter{((element>1)&(element<9))}%>%map{element}",
+            transform("filter{(((element>1)&(element<12))&((element<9)|(element<3)))}", false)
+        )
+        assertEquals(
+            "filter{((element<3)|(element>3))}%>%map{element}",
+            transform("filter{(((element<3)|(element>5))|((element>3)&(element<6)))}", false)
+        )
+        assertEquals(
+            "filter{(((element>2)&(element<6))&((element*element)>10))}%>%map{element}",
+            transform("filter{((element>2)&(((element*element)>10)&(6>element)))}", false)
+        )
+
+        val random = Random(42)
+        val constants = listOf(Int.MIN_VALUE + 1, Int.MAX_VALUE - 1, Int.MAX_VALUE) + (-110..110)
+        fun randomLogic(depth: Int): String = if (depth == 0 || random.nextInt(4) == 0) {
+            val const = constants[random.nextInt(constants.size)]
+            when (random.nextInt(4)) {
+                0 -> "(element>$const)"
+                1 -> "($const<element)"
+                2 -> "(element=$const)"
+                else -> "(element<$const)"
+            }
+        } else {
+            val type = if (random.nextBoolean()) "&" else "|"
+            "(${randomLogic(depth - 1)}$type${randomLogic(depth - 1)})"
+        }
+
+        repeat(500) {
+            val case = "filter{${randomLogic(4)}}"
+            val source = (getAst(case).calls[0] as FilterCall).expr
+            val optimized = (getAst(transform(case, false)).calls[0] as FilterCall).expr
+            assertEquals(IntervalSet.of(source), IntervalSet.of(optimized), case)
+            assertTrue(IntervalSet.cmpCount(optimized) <= IntervalSet.cmpCount(source), case)
+            for (element in testList + constants.take(3) + Int.MIN_VALUE) {
+                val expected = source.accept(CallChainEvaluator(element)) != 0
+                assertEquals(expected, element in IntervalSet.of(source)!!, case)
+                assertEquals(expected, optimized.accept(CallChainEvaluator(element)) != 0, case)
+            }
+        }
+    }
+
+    @Test
+    fun testPolynomialMaps() {
+        assertEquals(
+            "filter{(1=1)}%>%map{((element-3)*element)}",
+            transform("map{((element*element)-(3*element))}", false)
+        )
+        assertEquals(
+            "let{t0:=(element*element)}%>%filter{(1=1)}%>%map{(((t0*2)-1)*t0)}",
+            transform("map{(element*element)}%>%map{((element*(element*2))-element)}", false)
+        )
+
+        val random = Random(7)
+        fun randomArithm(depth: Int): String = if (depth == 0 || random.nextInt(4) == 0) {
+            if (random.nextBoolean()) "element" else (random.nextInt(21) - 10).toString()
+        } else {
+            val op = listOf("+", "-", "*")[random.nextInt(3)]
+            "(${randomArithm(depth - 1)}$op${randomArithm(depth - 1)})"
+        }
+
+        repeat(500) {
+            val case = "map{${randomArithm(5)}}%>%map{${randomArithm(3)}}"
+            val fused = (simplifyCallChain(getAst(case)).calls[1] as MapCall).expr
+            val polynomial = Polynomial.of(fused) ?: return@repeat
+            val horner = polynomial.toArithmExpr() ?: return@repeat
+            assertEquals(polynomial, Polynomial.of(horner), case)
+            for (element in testList + listOf(Int.MIN_VALUE, Int.MAX_VALUE, 65536, 1 shl 30)) {
+                val expected = fused.accept(CallChainEvaluator(element))
+                assertEquals(expected, polynomial.evaluate(element), case)
+                assertEquals(expected, horner.accept(CallChainEvaluator(element)), case)
+            }
+        }
+    }
+
+    @Test
+    fun testEGraphOptimizer() {
+        val optimizer = EGraphOptimizer()
+        val transformer = ChainTransformer(optimizer)
+        for (case in commonCases) {
+            val simplified = simplifyCallChain(getAst(case))
+            assertTrue(EGraphOptimizer.cost(optimizer.optimize(simplified)) <= EGraphOptimizer.cost(simplified), case)
+
+            // rewrites hold with overflow, so results are the same for all elements
+            val optimized = getAst(transformer.transform(case, false))
+            for (element in testList + listOf(Int.MIN_VALUE, Int.MAX_VALUE, 1 shl 16)) {
+                val expected = CallChainEvaluator(element)
+                getAst(case).accept(expected)
+                val actual = CallChainEvaluator(element)
+                optimized.accept(actual)
+                assertEquals(expected.result, actual.result, case)
+            }
+        }
+        assertEquals("filter{(1=0)}%>%map{element}", transformer.transform(commonCases[2], false))
+        assertEquals(
+            "filter{((element>1)&(element<9))}%>%map{element}",
+            transformer.transform("filter{(((element>1)&(element<12))&((element<9)|(element<3)))}", false)
+        )
+
+        // single distribution adds a product of class sizes, so budget must hold within rules on a warm JVM
+        val exploding = "let{t:=(element+element)}%>%filter{((-1*(t*t))>element)}%>%map{(((0-t)*t)-(-3-(t-t)))}" +
+                "%>%filter{((t*(2-t))>(element+1))}%>%map{(((-3--1)+-2)+((element+t)*0))}" +
+                "%>%let{t:=((t+element)+(t+1))}%>%map{element}"
+        // time limit is far away, so node limit stops saturation on every run
+        val bounded = EGraphOptimizer(nodeLimit = 5_000, iterationLimit = 30, timeLimitMillis = 60_000)
+        val boundedTransformer = ChainTransformer(bounded)
+        repeat(20) {
+            val optimized = boundedTransformer.transform(exploding, false)
+            assertFalse(bounded.saturated)
+            assertTrue(bounded.nodeCount <= 5_000, "${bounded.nodeCount} nodes")
+            assertTrue(bounded.iterations <= 30)
+            for (element in testList) {
+                val expected = CallChainEvaluator(element)
+                getAst(exploding).accept(expected)
+                val actual = CallChainEvaluator(element)
+                getAst(optimized).accept(actual)
+                assertEquals(expected.result, actual.result, exploding)
+            }
+        }
+    }
+
+    @Test
+    fun testFixpointOptimizer() {
+        val optimizer = FixpointOptimizer()
+        for (case in commonCases) {
+            val simplified = simplifyCallChain(getAst(case))
+            val optimized = optimizer.optimize(simplified)
+            assertTrue(optimizer.converged, case)
+            assertEquals(optimized, optimizer.optimize(optimized), case)
+
+            // last pass only checks new nodes, unchanged subtrees are already known to be stable
+            val passes = optimizer.passes
+            if (passes.size > 1) {
+                assertTrue(passes.last().visitedNodes < passes.first().visitedNodes, case)
+            }
+        }
+
+        // second pass simplifies nodes created by the first one
+        val transformer = ChainTransformer(optimizer)
+        assertEquals("filter{(1=1)}%>%map{((element*element)-3)}", transformer.transform("map{((element*element)+-3)}", false))
+        assertEquals(2, optimizer.passes.size)
+        assertEquals("filter{(1=1)}%>%map{((element*6)-3)}", transformer.transform("map{((element*6)-3)}", false))
+
+        // greedy rules keep values of source chain for elements without overflow
+        val random = Random(19)
+        fun randomArithm(depth: Int): String = if (depth == 0 || random.nextInt(3) == 0) {
+            listOf("element", "t", (random.nextInt(7) - 3).toString())[random.nextInt(3)]
+        } else {
+            val op = listOf("+", "-", "*")[random.nextInt(3)]
+            "(${randomArithm(depth - 1)}$op${randomArithm(depth - 1)})"
+        }
+        fun randomCmp(depth: Int) = randomArithm(depth) + listOf(">", "<", "=")[random.nextInt(3)] + randomArithm(depth)
+        repeat(300) {
+            val case = "let{t:=(element+${random.nextInt(7) - 3})}%>%" + List(3 + random.nextInt(6)) {
+                when (random.nextInt(4)) {
+                    0 -> "let{t:=${randomArithm(2)}}"
+                    1 -> "map{${randomArithm(2)}}"
+                    2 -> "filter{(${randomCmp(2)})}"
+                    else -> "filter{((${randomCmp(1)})${if (random.nextBoolean()) "&" else "|"}(${randomCmp(0)}))}"
+                }
+            }.joinToString("%>%")
+            val optimized = transformer.transform(case, false)
+            val expected = mutableListOf<Int>()
+            val actual = mutableListOf<Int>()
+            testList.forEach {
+                val evaluator = CallChainEvaluator(it)
+                evaluator.evaluate(case, expected)
+                evaluator.evaluate(optimized, actual)
+            }
+            assertIterableEquals(expected, actual, "$case -> $optimized")
+        }
+    }
+
+    @Test
+    fun testPartialFusion() {
+        val transformer = ChainTransformer()
+        for (case in commonCases) {
+            val partial = transformer.transformPartially(case, true)
+            val plan = transformer.lastPlan!!
+            assertTrue(plan.cost <= plan.fullFusionCost, case)
+            if (plan.segments == 1) {
+                assertEquals(transform(case, true), partial, case)
+            }
+
+            val expected = mutableListOf<Int>()
+            val actual = mutableListOf<Int>()
+            testList.forEach {
+                val evaluator = CallChainEvaluator(it)
+                evaluator.evaluate(case, expected)
+                evaluator.evaluate(partial, actual)
+            }
+            assertIterableEquals(expected, actual, case)
+        }
+
+        // first filter drops half of elements before the cubic map, which full fusion computes for all of them
+        val source = "filter{(element>0)}%>%map{(((element*element)*element)+(element*3))}" +
+                "%>%filter{(element>100)}%>%map{((element*element)+1)}"
+        assertEquals(
+            "filter{(element>0)}%>%map{(((element*element)*element)+(element*3))}" +
+                    "%>%filter{(element>100)}%>%map{((element*element)+1)}",
+            transformer.transformPartially(source, true)
+        )
+        assertEquals(2, transformer.lastPlan!!.segments)
+
+        // without selective filters full fusion is cheaper
+        transformer.transformPartially(source, true, FusionPlanner(selectivity = 1.0))
+        assertEquals(1, transformer.lastPlan!!.segments)
+
+        // segments reading and rebinding names of previous segments
+        val random = Random(23)
+        fun randomArithm(depth: Int): String = if (depth == 0 || random.nextInt(3) == 0) {
+            listOf("element", "t", (random.nextInt(7) - 3).toString())[random.nextInt(3)]
+        } else {
+            val op = listOf("+", "-", "*")[random.nextInt(3)]
+            "(${randomArithm(depth - 1)}$op${randomArithm(depth - 1)})"
+        }
+        val randomCases = List(300) {
+            "let{t:=(element+${random.nextInt(7) - 3})}%>%" + List(3 + random.nextInt(6)) {
+                when (random.nextInt(3)) {
+                    0 -> "let{t:=${randomArithm(2)}}"
+                    1 -> "map{${randomArithm(2)}}"
+                    else -> "filter{(${randomArithm(2)}>${randomArithm(2)})}"
+                }
+            }.joinToString("%>%")
+        }
+        val rebinding = "let{t:=(element+(element+element))}%>%filter{(element>(element-t))}" +
+                "%>%let{t:=(-1+(t-element))}%>%map{t}%>%filter{(element>t)}%>%map{-3}" +
+                "%>%let{t:=((t*element)+element)}%>%filter{(((element+t)-(1+t))>(t-2))}"
+        for (case in randomCases + rebinding) {
+            val partial = transformer.transformPartially(case, true)
+            val expected = mutableListOf<Int>()
+            val actual = mutableListOf<Int>()
+            testList.forEach {
+                val evaluator = CallChainEvaluator(it)
+                evaluator.evaluate(case, expected)
+                evaluator.evaluate(partial, actual)
+            }
+            assertIterableEquals(expected, actual, "$case -> $partial")
+        }
+    }
+
+    @Test
+    fun testBatchTransformation() {
+        val lines = (syntaxErrorCases.drop(1) + typeErrorCases + commonCases).shuffled(Random(42))
+        val output = StringWriter()
+        BatchTransformer(threads = 3, cache = TransformCache()).transform(BufferedReader(StringReader(lines.joinToString("\n"))), output)
+
+        val expected = lines.map { ChainTransformer().transformOrError(it, true) }
+        assertIterableEquals(expected, output.toString().lines().dropLast(1))
+        assertEquals("SYNTAX ERROR", expected[lines.indexOf(syntaxErrorCases[1])])
+        assertEquals("TYPE ERROR", expected[lines.indexOf(typeErrorCases[0])])
+
+        // stack overflow on one line doesn't abort the batch
+        val deep = "map{" + "(element+".repeat(100_000) + "1" + ")".repeat(100_000) + "}"
+        val withDeep = listOf(commonCases[0], deep, commonCases[1])
+        val deepOutput = StringWriter()
+        BatchTransformer(threads = 2).transform(BufferedReader(StringReader(withDeep.joinToString("\n"))), deepOutput)
+        assertIterableEquals(
+            listOf(transform(commonCases[0], true), BatchTransformer.INTERNAL_ERROR, transform(commonCases[1], true)),
+            deepOutput.toString().lines().dropLast(1)
+        )
+    }
+
     private fun CallChainEvaluator.evaluate(callChain: String, output: MutableList<Int>) {
         getAst(callChain).accept(this)
         if (result != null) {
@@ -70,9 +545,52 @@ class CallChainTests {
         }
     }
 
+    @Test
+    fun testTransformServer() {
+        val directory = Files.createTempDirectory("transform-server")
+        val addresses = listOf("0", "unix:" + directory.resolve("server.sock"))
+        val cases = syntaxErrorCases + typeErrorCases + commonCases
+
+        for (address in addresses) {
+            val server = try {
+                TransformServer(address, threads = 2)
+            } catch (ex: UnsupportedOperationException) {
+                // Unix domain sockets need JDK 16+
+                continue
+            }
+            server.use {
+                Thread { server.serve() }.apply { isDaemon = true }.start()
+                val clientAddress = if (server.port >= 0) server.port.toString() else address
+                TransformClient(clientAddress).use { client ->
+                    for (case in cases + cases) {
+                        val expected = ChainTransformer().transformOrError(case, true)
+                        assertEquals(expected, client.transformOrError(case, true), case)
+                    }
+                    assertEquals(transform(commonCases[0], false), client.transformOrError(commonCases[0], false))
+                }
+
+                // socket file of running server is not taken over
+                if (server.port < 0) {
+                    assertThrows<BindException> { TransformServer(address, threads = 1) }
+                    TransformClient(address).use { client ->
+                        assertEquals(transform(commonCases[0], true), client.transformOrError(commonCases[0], true))
+                    }
+                }
+
+                // frame without flags is rejected
+                TransformProtocol.connect(clientAddress).use { channel ->
+                    DataOutputStream(Channels.newOutputStream(channel)).writeInt(0)
+                    val response = TransformProtocol.read(DataInputStream(Channels.newInputStream(channel)))
+                    assertEquals(TransformProtocol.BAD_REQUEST, response!!.code)
+                }
+            }
+        }
+        Files.deleteIfExists(directory)
+    }
+
     @Test
     fun testSyntaxErrors() {
-        for (case in syntaxErrorCases) {
+        for (case in syntaxErrorCases + trailingTextCases) {
             assertThrows<ParseCancellationException> {
                 transform(case, true)
             }
@@ -87,4 +605,113 @@ class CallChainTests {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testLongChainFusionSharesSubtrees() {
+        val source = List(40) { "map{(element*element)}" }.joinToString("%>%") + "%>%filter{(element>1)}"
+        val simplified = simplifyCallChain(getAst(source))
+
+        val filter = simplified.calls[0] as FilterCall
+        val map = simplified.calls[1] as MapCall
+        // element and 40 squares
+        assertEquals(41, countDistinctNodes(map.expr))
+        // compare with 1 over the same squares
+        assertEquals(43, countDistinctNodes(filter.expr))
+    }
+
+    @Test
+    fun testOptimizerMemoIsLinear() {
+        val visited = listOf(20, 40, 80).map { size ->
+            val source = List(size) { "map{((element*element)+1)}%>%filter{(element>$it)}" }.joinToString("%>%")
+            val simplified = simplifyCallChain(getAst(source))
+            val distinct = simplified.calls.sumOf {
+                when (it) {
+                    is FilterCall -> countDistinctNodes(it.expr)
+                    is MapCall -> countDistinctNodes(it.expr)
+                    is LetCall -> countDistinctNodes(it.expr)
+                    else -> 0
+                }
+            }
+            val optimizer = CallOptimizer()
+            optimizer.optimize(simplified)
+
+            // repeated subexpressions are found in memo, so work is bounded by distinct ones
+            assertTrue(optimizer.memoHits > 0)
+            assertTrue(optimizer.visitedCount <= 2L * distinct, "$size: ${optimizer.visitedCount} > 2 * $distinct")
+
+            val fixpoint = FixpointOptimizer()
+            fixpoint.optimize(simplifyCallChain(getAst(source)))
+            assertTrue(fixpoint.converged)
+            assertTrue(fixpoint.passes.sumOf { it.visitedNodes } <= 4L * distinct)
+            optimizer.visitedCount
+        }
+        // doubling the chain at most roughly doubles the work
+        for ((smaller, larger) in visited.zipWithNext()) {
+            assertTrue(larger <= 2 * smaller + 8, "$smaller -> $larger")
+        }
+    }
+
+    @Test
+    fun testLongChainFusionIsLinear() {
+        val source = List(5_000) { "let{t:=(element*$it)}%>%map{(t+1)}%>%filter{(element>t)}" }.joinToString("%>%")
+        val ast = getAst(source)
+        assertEquals(15_000, ast.calls.size)
+
+        val simplified = simplifyCallChain(ast)
+        val filter = simplified.calls[0] as FilterCall
+        val map = simplified.calls[1] as MapCall
+        // every call adds a constant count of nodes
+        assertTrue(countDistinctNodes(map.expr) <= 4 * 5_000 + 1)
+        assertTrue(countDistinctNodes(filter.expr) <= 10 * 5_000)
+    }
+
+    @Test
+    fun testParallelFusion() {
+        val generated = List(1_000) {
+            when (it % 4) {
+                0 -> "let{t:=(element+$it)}"
+                1 -> "map{(t*element)}"
+                2 -> "filter{(element>t)}"
+                else -> "map{(element-t)}"
+            }
+        }.joinToString("%>%")
+        for ((case, segmentSize) in commonCases.map { it to 1 } + listOf(generated to 1, generated to 100)) {
+            val ast = getAst(case)
+            val expected = simplifyCallChain(ast)
+            val actual = ParallelChainFuser(segmentSize = segmentSize).fuse(ast)
+
+            // equal subtrees of both chains become the same instances, so chains are compared without expanding DAGs
+            val factory = AstFactory()
+            for (i in 0..1) {
+                assertTrue(factory.canonical(expected.calls[i]) == factory.canonical(actual.calls[i]), case)
+            }
+        }
+    }
+
+    @Test
+    fun testSharedSubexpressionsAreBound() {
+        val source = List(40) { "map{(element*element)}" }.joinToString("%>%") + "%>%filter{(element>1)}"
+        val transformed = transform(source, true)
+
+        // 40 let calls, filter and map
+        assertEquals(42, transformed.split("%>%").size)
+        assertTrue(transformed.length < 40 * 40)
+    }
+
+    private fun countDistinctNodes(root: AstNode): Int {
+        val visited = Collections.newSetFromMap(IdentityHashMap<AstNode, Boolean>())
+        val stack = ArrayDeque<AstNode>()
+        stack.push(root)
+        while (stack.isNotEmpty()) {
+            val node = stack.pop()
+            if (!visited.add(node)) continue
+            when (node) {
+                is BinLogicExpr -> { stack.push(node.left); stack.push(node.right) }
+                is CmpExpr -> { stack.push(node.left); stack.push(node.right) }
+                is BinArithmExpr -> { stack.push(node.left); stack.push(node.right) }
+                is MinusExpr -> stack.push(node.number)
+            }
+        }
+        return visited.size
+    }
+}
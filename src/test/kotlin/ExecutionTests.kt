@@ -0,0 +1,262 @@
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import ru.nsu.fit.jbr.simplifier.execution.*
+import ru.nsu.fit.jbr.simplifier.getAst
+import ru.nsu.fit.jbr.simplifier.simplifyCallChain
+import ru.nsu.fit.jbr.simplifier.transform
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.file.Files
+import java.util.concurrent.Executor
+import java.util.concurrent.ForkJoinPool
+
+class ExecutionTests {
+
+    private val cases = listOf(
+        "filter{(element>10)}%>%filter{(element<20)}",
+        "map{(element+10)}%>%filter{(element>10)}%>%map{(element*element)}",
+        "filter{(element>0)}%>%filter{(element<0)}%>%map{(element*element)}",
+        "filter{(element<30)}%>%map{(element+-10)}%>%filter{(element>10)}%>%map{(element*element)}",
+        "filter{((element<-30)|((element>5)&(element<50)))}%>%map{((element*element)-(3*element))}",
+        "let{t:=(element*2)}%>%map{(t+element)}%>%filter{((t>element)|(element=7))}%>%map{(t-element)}",
+        "filter{((3>element)|(-50=element))}%>%map{(2-(element-element))}%>%filter{(element<(element*element))}",
+        "map{(element*1000000)}%>%map{(element*element)}%>%filter{(element=-1674512384)}",
+        "filter{(((element<-30)|(element=0))|(((element>5)&(element<50))|(element>90)))}%>%map{(element+1)}",
+        "filter{((element>-2147483647)&((element<2147483647)&((element<-7)|(element>7))))}",
+        "map{(element+1)}%>%map{(element*element)}%>%map{(element-3)}%>%map{(element*element)}%>%map{(element*element)}"
+    )
+
+    private val testList = (-100..100).toList()
+
+    @Test
+    fun testBytecodeKernel() {
+        val compiler = BytecodeCompiler()
+        for (case in cases) {
+            for (source in listOf(case, transform(case, true), transform(case, false))) {
+                val chain = getAst(source)
+                assertSameResults(InterpretingKernel(chain), compiler.compile(chain), source)
+            }
+        }
+    }
+
+    @Test
+    fun testRegisterMachine() {
+        val encoder = RegisterEncoder()
+        for (case in cases) {
+            for (source in listOf(case, transform(case, true), transform(case, false))) {
+                val chain = getAst(source)
+                assertSameResults(InterpretingKernel(chain), RegisterMachine(encoder.encode(chain)), source)
+            }
+        }
+    }
+
+    @Test
+    fun testClosureKernel() {
+        val compiler = ClosureCompiler()
+        for (case in cases) {
+            for (source in listOf(case, transform(case, true), transform(case, false))) {
+                val chain = getAst(source)
+                assertSameResults(InterpretingKernel(chain), compiler.compile(chain), source)
+            }
+            // fused maps without common subexpression elimination
+            val fused = simplifyCallChain(getAst(case))
+            assertSameResults(InterpretingKernel(fused), compiler.compile(fused), case)
+        }
+    }
+
+    @Test
+    fun testColumnarBatchEvaluator() {
+        val input = testList.toIntArray()
+        for (case in cases) {
+            for (source in listOf(case, transform(case, true), transform(case, false))) {
+                val chain = getAst(source)
+                assertSameBatchResults(
+                    ScalarBatchEvaluator(InterpretingKernel(chain)),
+                    ColumnarBatchEvaluator(chain, 16),
+                    input,
+                    source
+                )
+            }
+        }
+    }
+
+    @Test
+    fun testDefaultBatchEvaluator() {
+        val input = testList.toIntArray()
+        for (case in cases) {
+            for (source in listOf(case, transform(case, true), transform(case, false))) {
+                val chain = getAst(source)
+                assertSameBatchResults(
+                    ScalarBatchEvaluator(InterpretingKernel(chain)),
+                    BatchEvaluators.create(chain, 64),
+                    input,
+                    source
+                )
+            }
+        }
+    }
+
+    @Test
+    fun testParallelBatchEvaluator() {
+        val pool = ForkJoinPool(4)
+        val input = IntArray(10_000) { it * 7919 % 20011 - 10000 }
+        try {
+            for (case in cases) {
+                val chain = getAst(case)
+                assertSameBatchResults(
+                    ScalarBatchEvaluator(InterpretingKernel(chain)),
+                    ParallelBatchEvaluator({ ColumnarBatchEvaluator(chain, 64) }, pool, 300),
+                    input,
+                    case
+                )
+            }
+        } finally {
+            pool.shutdown()
+        }
+    }
+
+    @Test
+    fun testMappedFileEvaluator() {
+        val input = Files.createTempFile("input", ".bin")
+        val output = Files.createTempFile("output", ".bin")
+        try {
+            val bytes = ByteBuffer.allocate(testList.size * Int.SIZE_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+            testList.forEach { bytes.putInt(it) }
+            Files.write(input, bytes.array())
+
+            // one region, several regions of three windows, region per window
+            for ((case, regionSize) in cases.flatMap { case -> listOf(1L shl 30, 3L * 37 * 4, 1L).map { case to it } }) {
+                val chain = getAst(case)
+                val count = MappedFileEvaluator(ColumnarBatchEvaluator(chain, 16), 37, regionSize).evaluate(input, output)
+
+                val expected = IntArray(testList.size)
+                val expectedCount = ScalarBatchEvaluator(InterpretingKernel(chain))
+                    .evaluate(testList.toIntArray(), 0, testList.size, expected)
+                val actual = ByteBuffer.wrap(Files.readAllBytes(output)).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()
+                assertEquals(expectedCount.toLong(), count, case)
+                assertEquals(expectedCount, actual.remaining(), case)
+                for (i in 0 until expectedCount) {
+                    assertEquals(expected[i], actual.get(i), case)
+                }
+            }
+        } finally {
+            // mapped file can't be deleted on Windows until buffer is collected
+            input.toFile().deleteOnExit()
+            Files.delete(output)
+        }
+    }
+
+    @Test
+    fun testTieredPromotion() {
+        val execution = TieredExecution(elementThreshold = 500, compilationExecutor = Executor { it.run() })
+        val input = testList.toIntArray()
+        for (case in cases) {
+            val chain = getAst(case)
+            val tiered = execution.chain(chain)
+            assertEquals(TieredExecution.Tier.REGISTER_MACHINE, tiered.tier, case)
+            for (i in 0 until 5) {
+                assertSameBatchResults(ScalarBatchEvaluator(InterpretingKernel(chain)), BatchEvaluatorAdapter(tiered), input, case)
+            }
+            assertEquals(TieredExecution.Tier.COMPILED, tiered.tier, case)
+            assertSameResults(InterpretingKernel(chain), ElementKernelAdapter(tiered), case)
+            assertEquals(5L + testList.size, tiered.invocations, case)
+        }
+        assertEquals(cases.size, execution.tierCounts()[TieredExecution.Tier.COMPILED])
+        assertEquals(cases.size.toLong(), execution.promotionCount)
+
+        // results near overflow don't change with tier
+        val overflowing = TieredExecution(invocationThreshold = 1, compilationExecutor = Executor { it.run() })
+        val edges = intArrayOf(Int.MAX_VALUE, Int.MAX_VALUE - 5, Int.MIN_VALUE, Int.MIN_VALUE + 5, 0, -1)
+        for (case in listOf("filter{((element+10)>10)}", "filter{((element+-10)>2147483640)}%>%map{(element*2)}")) {
+            val chain = overflowing.chain(getAst(case))
+            val expected = edges.map { InterpretingKernel(getAst(case)).evaluate(it) }
+            // the first invocation runs on initial tier and promotes chain
+            assertEquals(expected[0], chain.evaluate(edges[0]), case)
+            assertEquals(TieredExecution.Tier.COMPILED, chain.tier, case)
+            assertEquals(expected, edges.map { chain.evaluate(it) }, case)
+        }
+
+        // single-element invocations check thresholds periodically, not on every call
+        val single = TieredExecution(invocationThreshold = 100, compilationExecutor = Executor { it.run() })
+        val tiered = single.chain(getAst(cases[0]))
+        repeat(100) { tiered.evaluate(it) }
+        assertEquals(TieredExecution.Tier.REGISTER_MACHINE, tiered.tier)
+        repeat(64) { tiered.evaluate(it) }
+        assertEquals(TieredExecution.Tier.COMPILED, tiered.tier)
+    }
+
+    @Test
+    fun testTieredFallbackToClosures() {
+        // balanced expression with distinct leaves, its bytecode exceeds 64 KiB method limit
+        var next = 0
+        fun expr(depth: Int): String = if (depth == 0) "((element*2)+${2 * next++ + 1})" else {
+            "(${expr(depth - 1)}${if (depth % 2 == 0) "+" else "*"}${expr(depth - 1)})"
+        }
+        val source = "filter{(${expr(14)}>element)}"
+        val execution = TieredExecution(invocationThreshold = 1, compilationExecutor = Executor { it.run() })
+        val chain = getAst(source)
+        val tiered = execution.chain(chain)
+        tiered.evaluate(0)
+
+        assertEquals(TieredExecution.Tier.CLOSURE, tiered.tier)
+        assertEquals(1L, execution.promotionCount)
+        assertEquals(0L, execution.failedPromotionCount)
+        assertSameResults(InterpretingKernel(chain), ElementKernelAdapter(tiered), "fallback")
+    }
+
+    @Test
+    fun testTieredFailedPromotion() {
+        // compilation on thread with small stack overflows on deep chain
+        val smallStack = Executor { task -> Thread(null, task, "small-stack", 32 * 1024).apply { start(); join() } }
+        val execution = TieredExecution(invocationThreshold = 1, compilationExecutor = smallStack)
+        val source = "map{" + "(element+".repeat(500) + "1" + ")".repeat(500) + "}"
+        val tiered = execution.chain(getAst(source))
+        tiered.evaluate(0)
+
+        assertEquals(TieredExecution.Tier.REGISTER_MACHINE, tiered.tier)
+        assertEquals(1L, execution.failedPromotionCount)
+        assertEquals(0L, execution.promotionCount)
+        assertSameResults(InterpretingKernel(getAst(source)), ElementKernelAdapter(tiered), "deep")
+    }
+
+    private class BatchEvaluatorAdapter(private val chain: TieredExecution.TieredChain) : BatchEvaluator {
+        override fun evaluate(input: IntArray, offset: Int, length: Int, output: IntArray, selection: IntArray?): Int =
+            chain.evaluate(input, offset, length, output, selection)
+    }
+
+    private class ElementKernelAdapter(private val chain: TieredExecution.TieredChain) : ElementKernel {
+        override fun evaluate(element: Int): Long = chain.evaluate(element)
+    }
+
+    private fun assertSameBatchResults(
+        expected: BatchEvaluator,
+        actual: BatchEvaluator,
+        input: IntArray,
+        source: String
+    ) {
+        val offset = 3
+        val length = input.size - 2 * offset
+        val expectedOutput = IntArray(length)
+        val expectedSelection = IntArray(length)
+        val expectedCount = expected.evaluate(input, offset, length, expectedOutput, expectedSelection)
+        val actualOutput = IntArray(length)
+        val actualSelection = IntArray(length)
+        val actualCount = actual.evaluate(input, offset, length, actualOutput, actualSelection)
+
+        assertEquals(expectedCount, actualCount, source)
+        assertArrayEquals(expectedOutput.copyOf(expectedCount), actualOutput.copyOf(actualCount), source)
+        assertArrayEquals(expectedSelection.copyOf(expectedCount), actualSelection.copyOf(actualCount), source)
+    }
+
+    private fun assertSameResults(expected: ElementKernel, actual: ElementKernel, source: String) {
+        for (element in testList) {
+            val expectedResult = expected.evaluate(element)
+            val actualResult = actual.evaluate(element)
+            assertEquals(ElementKernel.isPassed(expectedResult), ElementKernel.isPassed(actualResult), source)
+            if (ElementKernel.isPassed(expectedResult)) {
+                assertEquals(ElementKernel.valueOf(expectedResult), ElementKernel.valueOf(actualResult), source)
+            }
+        }
+    }
+}
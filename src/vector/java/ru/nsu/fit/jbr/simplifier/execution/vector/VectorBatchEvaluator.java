@@ -0,0 +1,311 @@
+package ru.nsu.fit.jbr.simplifier.execution.vector;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import ru.nsu.fit.jbr.simplifier.ast.*;
+import ru.nsu.fit.jbr.simplifier.execution.BatchEvaluator;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Evaluates call chain column-at-a-time like ColumnarBatchEvaluator,
+ * but applies every node to IntVector lanes of the preferred species.
+ * Filters are evaluated to lane masks, and passed lanes are compacted by mask bits.
+ * Requires jdk.incubator.vector module, so it is created only through BatchEvaluators.
+ */
+public final class VectorBatchEvaluator implements BatchEvaluator {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private static final int LANES = SPECIES.length();
+
+    private static final long ALL_LANES = LANES == Long.SIZE ? -1L : (1L << LANES) - 1;
+
+    private final CallChain chain;
+
+    /**
+     * Count of elements processed by one traversal of AST, multiple of lanes count.
+     */
+    private final int blockSize;
+
+    /**
+     * Current values of active elements.
+     */
+    private int[] values;
+
+    /**
+     * Indices of active elements in input.
+     */
+    private final int[] rows;
+
+    /**
+     * Count of active elements in block.
+     */
+    private int count;
+
+    /**
+     * Values of bound names for active elements.
+     */
+    private final Map<String, int[]> bindings = new HashMap<>();
+
+    private final ArrayDeque<int[]> freeBuffers = new ArrayDeque<>();
+
+    public VectorBatchEvaluator(CallChain chain, int blockSize) {
+        this.chain = chain;
+        this.blockSize = Math.max(LANES, blockSize / LANES * LANES);
+        this.values = new int[this.blockSize];
+        this.rows = new int[this.blockSize];
+    }
+
+    @Override
+    public int evaluate(int[] input, int offset, int length, int[] output, int[] selection) {
+        int passed = 0;
+        int start = offset;
+        int end = offset + length;
+        while (start < end) {
+            int size = Math.min(blockSize, end - start);
+            System.arraycopy(input, start, values, 0, size);
+            for (int i = 0; i < size; i++) {
+                rows[i] = start + i;
+            }
+            count = size;
+
+            evaluateBlock();
+
+            System.arraycopy(values, 0, output, passed, count);
+            if (selection != null) {
+                System.arraycopy(rows, 0, selection, passed, count);
+            }
+            passed += count;
+            start += size;
+        }
+        return passed;
+    }
+
+    private void evaluateBlock() {
+        freeBuffers.addAll(bindings.values());
+        bindings.clear();
+
+        for (Call call : chain.getCalls()) {
+            if (count == 0) {
+                return;
+            }
+            if (call instanceof FilterCall) {
+                filter(((FilterCall) call).getExpr());
+            } else if (call instanceof MapCall) {
+                int[] mapped = acquire();
+                arithm(((MapCall) call).getExpr(), mapped);
+                release(values);
+                values = mapped;
+            } else if (call instanceof LetCall) {
+                int[] bound = acquire();
+                arithm(((LetCall) call).getExpr(), bound);
+                int[] previous = bindings.put(((LetCall) call).getName(), bound);
+                if (previous != null) {
+                    release(previous);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown call: " + call);
+            }
+        }
+    }
+
+    /**
+     * Leaves only active elements satisfying predicate.
+     */
+    private void filter(LogicExpr expr) {
+        int[] mask = acquire();
+        logic(expr, mask);
+
+        int[][] bound = bindings.values().toArray(new int[0][]);
+        int kept = 0;
+        int i = 0;
+        int loopBound = SPECIES.loopBound(count);
+        for (; i < loopBound; i += LANES) {
+            long bits = IntVector.fromArray(SPECIES, mask, i).compare(VectorOperators.NE, 0).toLong();
+            if (bits == ALL_LANES && kept == i) {
+                kept += LANES;
+                continue;
+            }
+            while (bits != 0) {
+                int lane = i + Long.numberOfTrailingZeros(bits);
+                move(lane, kept++, bound);
+                bits &= bits - 1;
+            }
+        }
+        for (; i < count; i++) {
+            if (mask[i] != 0) {
+                move(i, kept++, bound);
+            }
+        }
+        count = kept;
+        release(mask);
+    }
+
+    private void move(int from, int to, int[][] bound) {
+        values[to] = values[from];
+        rows[to] = rows[from];
+        for (int[] column : bound) {
+            column[to] = column[from];
+        }
+    }
+
+    /**
+     * Writes 1 for active elements satisfying expression and 0 for others to result.
+     */
+    private void logic(LogicExpr expr, int[] result) {
+        if (expr instanceof CmpExpr) {
+            CmpExpr cmp = (CmpExpr) expr;
+            int[] left = acquire();
+            int[] right = acquire();
+            arithm(cmp.getLeft(), left);
+            arithm(cmp.getRight(), right);
+            VectorOperators.Comparison op = comparison(cmp.getType());
+            IntVector zero = IntVector.zero(SPECIES);
+            int i = 0;
+            int loopBound = SPECIES.loopBound(count);
+            for (; i < loopBound; i += LANES) {
+                VectorMask<Integer> passed = IntVector.fromArray(SPECIES, left, i)
+                        .compare(op, IntVector.fromArray(SPECIES, right, i));
+                zero.blend(1, passed).intoArray(result, i);
+            }
+            for (; i < count; i++) {
+                result[i] = compare(cmp.getType(), left[i], right[i]) ? 1 : 0;
+            }
+            release(left);
+            release(right);
+        } else {
+            BinLogicExpr bin = (BinLogicExpr) expr;
+            int[] right = acquire();
+            logic(bin.getLeft(), result);
+            logic(bin.getRight(), right);
+            VectorOperators.Binary op = bin.getType() == LogicType.AND ? VectorOperators.AND : VectorOperators.OR;
+            apply(op, result, right);
+            release(right);
+        }
+    }
+
+    /**
+     * Writes values of expression for active elements to result.
+     */
+    private void arithm(ArithmExpr expr, int[] result) {
+        if (expr instanceof Element) {
+            System.arraycopy(values, 0, result, 0, count);
+        } else if (expr instanceof Reference) {
+            int[] bound = bindings.get(((Reference) expr).getName());
+            if (bound == null) {
+                throw new IllegalArgumentException("Name is not bound: " + ((Reference) expr).getName());
+            }
+            System.arraycopy(bound, 0, result, 0, count);
+        } else if (expr instanceof ConstExpr) {
+            Arrays.fill(result, 0, count, constValue((ConstExpr) expr));
+        } else {
+            BinArithmExpr bin = (BinArithmExpr) expr;
+            arithm(bin.getLeft(), result);
+            VectorOperators.Binary op = arithmetic(bin.getType());
+            if (bin.getRight() instanceof ConstExpr) {
+                applyConst(op, result, constValue((ConstExpr) bin.getRight()));
+            } else if (bin.getRight() instanceof Element) {
+                apply(op, result, values);
+            } else {
+                int[] operand = acquire();
+                arithm(bin.getRight(), operand);
+                apply(op, result, operand);
+                release(operand);
+            }
+        }
+    }
+
+    private void apply(VectorOperators.Binary op, int[] result, int[] operand) {
+        int i = 0;
+        int loopBound = SPECIES.loopBound(count);
+        for (; i < loopBound; i += LANES) {
+            IntVector.fromArray(SPECIES, result, i)
+                    .lanewise(op, IntVector.fromArray(SPECIES, operand, i))
+                    .intoArray(result, i);
+        }
+        for (; i < count; i++) {
+            result[i] = scalar(op, result[i], operand[i]);
+        }
+    }
+
+    private void applyConst(VectorOperators.Binary op, int[] result, int value) {
+        IntVector operand = IntVector.broadcast(SPECIES, value);
+        int i = 0;
+        int loopBound = SPECIES.loopBound(count);
+        for (; i < loopBound; i += LANES) {
+            IntVector.fromArray(SPECIES, result, i).lanewise(op, operand).intoArray(result, i);
+        }
+        for (; i < count; i++) {
+            result[i] = scalar(op, result[i], value);
+        }
+    }
+
+    private static int scalar(VectorOperators.Binary op, int left, int right) {
+        if (op == VectorOperators.ADD) {
+            return left + right;
+        } else if (op == VectorOperators.SUB) {
+            return left - right;
+        } else if (op == VectorOperators.MUL) {
+            return left * right;
+        } else if (op == VectorOperators.AND) {
+            return left & right;
+        } else {
+            return left | right;
+        }
+    }
+
+    private static VectorOperators.Binary arithmetic(ArithmType type) {
+        switch (type) {
+            case PLUS:
+                return VectorOperators.ADD;
+            case MINUS:
+                return VectorOperators.SUB;
+            default:
+                return VectorOperators.MUL;
+        }
+    }
+
+    private static VectorOperators.Comparison comparison(CmpType type) {
+        switch (type) {
+            case MORE:
+                return VectorOperators.GT;
+            case LESS:
+                return VectorOperators.LT;
+            default:
+                return VectorOperators.EQ;
+        }
+    }
+
+    private static boolean compare(CmpType type, int left, int right) {
+        switch (type) {
+            case MORE:
+                return left > right;
+            case LESS:
+                return left < right;
+            default:
+                return left == right;
+        }
+    }
+
+    private static int constValue(ConstExpr expr) {
+        if (expr instanceof NumberExpr) {
+            return Integer.parseInt(((NumberExpr) expr).getValue());
+        }
+        return -Integer.parseInt(((MinusExpr) expr).getNumber().getValue());
+    }
+
+    private int[] acquire() {
+        int[] buffer = freeBuffers.poll();
+        return buffer == null ? new int[blockSize] : buffer;
+    }
+
+    private void release(int[] buffer) {
+        freeBuffers.push(buffer);
+    }
+}